@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  * The per-event work of a drag, as TouchListView hands it to the
+  * engine, replayed over a finger sweeping up and down the list.
+  * The list holds rows rows of random height; VISIBLE of them are
+  * attached, in the middle of the list.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DragEngineBenchmark {
+    private static final int LIST_HEIGHT = 1920;
+    private static final int VISIBLE = 24;
+    private static final int SWEEP = 256;  // touch events per sweep down and back up
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int rows;
+
+    private DragEngine engine;
+    private RowHeightIndex heights;
+    private ChildGeometry geometry;
+    private final int[] fingerY = new int[SWEEP];
+    private int event;
+    private int firstVisible;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        heights = new RowHeightIndex();
+        heights.reset(rows, 80);
+        for (int i = 0; i < rows; i++) {
+            heights.set(i, 60 + random.nextInt(60));
+        }
+
+        firstVisible = (rows - VISIBLE) / 2;
+        geometry = new ChildGeometry();
+        geometry.begin(firstVisible, VISIBLE);
+        int top = 0;
+        for (int i = 0; i < VISIBLE; i++) {
+            int bottom = top + heights.get(firstVisible + i);
+            geometry.set(i, top, bottom);
+            top = bottom;
+        }
+        geometry.end();
+
+        engine = new DragEngine(16, -1, 80);
+        int grabbed = firstVisible + VISIBLE / 2;
+        int rowTop = (int) (heights.offsetOf(grabbed) - heights.offsetOf(firstVisible));
+        engine.start(grabbed, rowTop + 20, rowTop, heights.get(grabbed), LIST_HEIGHT);
+
+        for (int i = 0; i < SWEEP; i++) {
+            int half = SWEEP / 2;
+            fingerY[i] = LIST_HEIGHT * ((i < half) ? i : SWEEP - i) / half;
+        }
+    }
+
+    private int nextY() {
+        event = (event + 1) & (SWEEP - 1);
+        return fingerY[event];
+    }
+
+    /*
+      * One ACTION_MOVE with displacement="resize": hit-test the
+      * attached rows, move the drop target, pick the gap and hidden
+      * rows and the scroll speed.
+      */
+    @Benchmark
+    public int resizeMove() {
+        int y = nextY();
+        engine.adjustScrollBounds(y);
+        engine.moveTo(engine.getTarget(y, geometry), false);
+        return engine.getGapChildIndex(firstVisible) + engine.getHiddenChildIndex(firstVisible)
+                + (int) engine.getScrollSpeed(y, 1000f);
+    }
+
+    /*
+      * One ACTION_MOVE with displacement="translate": look the drop
+      * target up by content offset, then the displacement of every
+      * attached row for the next frame.
+      */
+    @Benchmark
+    public int translateMove() {
+        int y = nextY();
+        engine.adjustScrollBounds(y);
+        engine.moveTo(engine.getTranslatedTarget(y, heights, firstVisible, 0), false);
+        int sum = (int) engine.getScrollSpeed(y, 1000f);
+        for (int i = 0; i < VISIBLE; i++) {
+            sum += engine.getDisplacement(firstVisible + i);
+        }
+        return sum;
+    }
+
+    /*
+      * One auto-scroll frame in translate mode: the list moves on by a
+      * row, the attached rows are measured into the height index, and
+      * the drop target is looked up again.
+      */
+    @Benchmark
+    public int autoScrollFrame() {
+        firstVisible = (firstVisible + 1 < rows - VISIBLE) ? firstVisible + 1 : 0;
+        for (int i = 0; i < VISIBLE; i++) {
+            int position = firstVisible + i;
+            heights.set(position, 60 + ((position * 31) & 63));
+        }
+        return engine.getTranslatedTarget(nextY(), heights, firstVisible, 0);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+  * The single operations of the row height index, at random rows.
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowHeightIndexBenchmark {
+    private static final int SAMPLES = 1024;
+
+    @Param({ "1000", "10000", "100000", "1000000" })
+    public int rows;
+
+    private RowHeightIndex heights;
+    private final int[] indices = new int[SAMPLES];
+    private final long[] offsets = new long[SAMPLES];
+    private int sample;
+    private int height;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        heights = new RowHeightIndex();
+        heights.reset(rows, 80);
+        for (int i = 0; i < rows; i++) {
+            heights.set(i, 60 + random.nextInt(60));
+        }
+        long total = heights.offsetOf(rows);
+        for (int i = 0; i < SAMPLES; i++) {
+            indices[i] = random.nextInt(rows);
+            offsets[i] = (long) (random.nextDouble() * total);
+        }
+    }
+
+    private int next() {
+        sample = (sample + 1) & (SAMPLES - 1);
+        return sample;
+    }
+
+    @Benchmark
+    public long offsetOf() {
+        return heights.offsetOf(indices[next()]);
+    }
+
+    @Benchmark
+    public int indexAt() {
+        return heights.indexAt(offsets[next()]);
+    }
+
+    @Benchmark
+    public void set() {
+        // a new height every time, or set() returns early
+        heights.set(indices[next()], 60 + (++height & 63));
+    }
+
+    /*
+      * The O(n) rebuild TouchListView does when the adapter count
+      * changes.
+      */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int reset() {
+        heights.reset(rows, 80);
+        return heights.size();
+    }
+}
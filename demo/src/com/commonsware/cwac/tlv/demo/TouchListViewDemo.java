@@ -1,6 +1,5 @@
 package com.commonsware.cwac.tlv.demo;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import android.app.ListActivity;
@@ -8,10 +7,9 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
-import com.commonsware.cwac.tlv.TouchListView;
+import com.commonsware.cwac.tlv.BaseReorderableAdapter;
 
 public class TouchListViewDemo extends ListActivity {
 	private static String[] items={"lorem", "ipsum", "dolor", "sit", "amet",
@@ -20,41 +18,21 @@ public class TouchListViewDemo extends ListActivity {
 																	"etiam", "vel", "erat", "placerat", "ante",
 																	"porttitor", "sodales", "pellentesque", "augue", "purus"};
 	private IconicAdapter adapter=null;
-	private ArrayList<String> array=new ArrayList<String>(Arrays.asList(items));
 	
 	@Override
 	public void onCreate(Bundle icicle) {
 		super.onCreate(icicle);
 		setContentView(R.layout.main);
 
-		TouchListView tlv=(TouchListView)getListView();
+		// IconicAdapter applies drops and removals itself, so no
+		// DropListener or RemoveListener is needed
 		adapter=new IconicAdapter();
 		setListAdapter(adapter);
-		
-		tlv.setDropListener(onDrop);
-		tlv.setRemoveListener(onRemove);
 	}
 	
-	private TouchListView.DropListener onDrop=new TouchListView.DropListener() {
-		@Override
-		public void drop(int from, int to) {
-				String item=adapter.getItem(from);
-				
-				adapter.remove(item);
-				adapter.insert(item, to);
-		}
-	};
-	
-	private TouchListView.RemoveListener onRemove=new TouchListView.RemoveListener() {
-		@Override
-		public void remove(int which) {
-				adapter.remove(adapter.getItem(which));
-		}
-	};
-	
-	class IconicAdapter extends ArrayAdapter<String> {
+	class IconicAdapter extends BaseReorderableAdapter<String> {
 		IconicAdapter() {
-			super(TouchListViewDemo.this, R.layout.row2, array);
+			super(Arrays.asList(items));
 		}
 		
 		public View getView(int position, View convertView,
@@ -69,7 +47,7 @@ public class TouchListViewDemo extends ListActivity {
 			
 			TextView label=(TextView)row.findViewById(R.id.label);
 			
-			label.setText(array.get(position));
+			label.setText(getItem(position));
 			
 			return(row);
 		}
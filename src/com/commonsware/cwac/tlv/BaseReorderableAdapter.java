@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.Collection;
+
+import android.widget.BaseAdapter;
+
+/*
+  * Base class for a BatchReorderableAdapter over a list of items. The
+  * items live in an order-statistic tree, so a drop or a removal on
+  * a list of tens of thousands of rows is O(log n) plus one
+  * notifyDataSetChanged(), rather than the two array shifts and two
+  * notifications of ArrayAdapter.remove() followed by insert().
+  * Subclasses only need to supply getView().
+  */
+public abstract class BaseReorderableAdapter<T> extends BaseAdapter implements BatchReorderableAdapter {
+    private final OrderStatisticList<T> mItems = new OrderStatisticList<T>();
+
+    public BaseReorderableAdapter() {
+    }
+
+    public BaseReorderableAdapter(Collection<? extends T> items) {
+        for (T item : items) {
+            mItems.add(item);
+        }
+    }
+
+    public int getCount() {
+        return mItems.size();
+    }
+
+    public T getItem(int position) {
+        return mItems.get(position);
+    }
+
+    public long getItemId(int position) {
+        return position;
+    }
+
+    public void move(int from, int to) {
+        mItems.move(from, to);
+        notifyDataSetChanged();
+    }
+
+    public void move(int[] from, int to) {
+        mItems.move(from, from.length, to);
+        notifyDataSetChanged();
+    }
+
+    public void remove(int which) {
+        mItems.remove(which);
+        notifyDataSetChanged();
+    }
+
+    public void remove(int[] which) {
+        for (int i = which.length - 1; i >= 0; i--) {
+            mItems.remove(which[i]);
+        }
+        notifyDataSetChanged();
+    }
+
+    public void add(T item) {
+        mItems.add(item);
+        notifyDataSetChanged();
+    }
+
+    public void insert(T item, int position) {
+        mItems.add(position, item);
+        notifyDataSetChanged();
+    }
+
+    public void set(int position, T item) {
+        mItems.set(position, item);
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        mItems.clear();
+        notifyDataSetChanged();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+/*
+  * A ReorderableAdapter that can also apply a block drag (see the
+  * multi_drag attribute) and a batch of deferred removals (see
+  * removal_undo_delay) in one go. from holds the dragged positions
+  * in ascending order; they end up, in that order, at to, to + 1, ...
+  * of the reordered list. which holds the removed positions in
+  * ascending order, all as they were before the batch. from is
+  * reused for later drops: copy it to keep it. Without this,
+  * TouchListView falls back to a series of single move() or remove()
+  * calls.
+  */
+public interface BatchReorderableAdapter extends ReorderableAdapter {
+    void move(int[] from, int to);
+
+    void remove(int[] which);
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+/*
+  * Column and row extents of the attached cells of a grid, copied
+  * out of the views once per layout or scroll. Since a grid lays its
+  * cells out in columns of equal width and rows of equal pitch, the
+  * cell at a point is found by dividing by the pitch, with at most a
+  * step or two of correction, rather than by searching. The spacing
+  * after a cell belongs to that cell.
+  */
+class CellIndex {
+    private int[] mLefts = new int[0];    // per column
+    private int[] mTops = new int[0];     // per row
+    private int[] mBottoms = new int[0];  // per row
+    private int mColumns;
+    private int mRows;
+    private int mCount;
+    private int mFirstPosition;
+    private int mAnchorTop;
+    private boolean mValid;
+
+    boolean isCurrent(int firstPosition, int count, int anchorTop) {
+        return mValid && mFirstPosition == firstPosition && mCount == count
+                && (count == 0 || mAnchorTop == anchorTop);
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    void begin(int firstPosition, int count, int columns) {
+        columns = Math.max(columns, 1);
+        int rows = (count + columns - 1) / columns;
+        if (mLefts.length < columns) {
+            mLefts = new int[columns];
+        }
+        if (mTops.length < rows) {
+            mTops = new int[rows];
+            mBottoms = new int[rows];
+        }
+        mFirstPosition = firstPosition;
+        mCount = count;
+        mColumns = columns;
+        mRows = rows;
+    }
+
+    void setColumn(int column, int left) {
+        mLefts[column] = left;
+    }
+
+    void setRow(int row, int top, int bottom) {
+        mTops[row] = top;
+        mBottoms[row] = bottom;
+    }
+
+    void end() {
+        mAnchorTop = (mRows > 0) ? mTops[0] : 0;
+        mValid = true;
+    }
+
+    int getColumns() {
+        return mColumns;
+    }
+
+    int getRowPitch() {
+        if (mRows > 1) {
+            return mTops[1] - mTops[0];
+        }
+        return (mRows > 0) ? mBottoms[0] - mTops[0] : 0;
+    }
+
+    /*
+      * Position of the cell at x, y. Points left or right of the
+      * columns count for the outer columns, and points in the empty
+      * end of the last row for the last cell. Returns -1 above or
+      * below the rows.
+      */
+    int cellAt(int x, int y) {
+        if (mCount == 0 || y < mTops[0] || y >= mBottoms[mRows - 1]) {
+            return -1;
+        }
+
+        int row = 0;
+        int pitch = getRowPitch();
+        if (pitch > 0) {
+            row = Math.min((y - mTops[0]) / pitch, mRows - 1);
+        }
+        while (row > 0 && y < mTops[row]) {
+            row--;
+        }
+        while (row < mRows - 1 && y >= mTops[row + 1]) {
+            row++;
+        }
+
+        int column = 0;
+        if (mColumns > 1) {
+            int width = mLefts[1] - mLefts[0];
+            if (width > 0) {
+                column = Math.max(0, Math.min((x - mLefts[0]) / width, mColumns - 1));
+            }
+        }
+
+        return mFirstPosition + Math.min(row * mColumns + column, mCount - 1);
+    }
+
+    /*
+      * Left of the slot of position, which may lie a row before or
+      * after the attached cells.
+      */
+    int getSlotLeft(int position) {
+        int index = position - mFirstPosition;
+        int column = ((index % mColumns) + mColumns) % mColumns;
+        return mLefts[column];
+    }
+
+    int getSlotTop(int position) {
+        int index = position - mFirstPosition;
+        int row = (index >= 0) ? index / mColumns : -((mColumns - 1 - index) / mColumns);
+        if (row >= 0 && row < mRows) {
+            return mTops[row];
+        }
+        return mTops[0] + row * getRowPitch();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+/*
+  * Tops and bottoms of the attached rows, copied out of the views
+  * once per layout or scroll so hit-testing is a binary search over
+  * two int arrays. Every attached row counts, whether invisible or
+  * collapsed to a single pixel, and the divider below a row belongs
+  * to that row.
+  */
+class ChildGeometry implements DragEngine.RowGeometry {
+    private int[] mTops = new int[0];
+    private int[] mBottoms = new int[0];
+    private int mCount;
+    private int mFirstPosition;
+    private int mAnchorTop;
+    private boolean mValid;
+
+    /*
+      * Whether the snapshot still describes the rows, judged by what
+      * a scroll or a new set of children would change.
+      */
+    boolean isCurrent(int firstPosition, int count, int anchorTop) {
+        return mValid && mFirstPosition == firstPosition && mCount == count
+                && (count == 0 || mAnchorTop == anchorTop);
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    void begin(int firstPosition, int count) {
+        if (mTops.length < count) {
+            // with room to spare, as the count creeps up by a row at a time while scrolling
+            mTops = new int[Math.max(count, mTops.length * 2)];
+            mBottoms = new int[mTops.length];
+        }
+        mFirstPosition = firstPosition;
+        mCount = count;
+    }
+
+    void set(int index, int top, int bottom) {
+        mTops[index] = top;
+        mBottoms[index] = bottom;
+    }
+
+    void end() {
+        mAnchorTop = (mCount > 0) ? mTops[0] : 0;
+        mValid = true;
+    }
+
+    /*
+      * Position of the row at y: the last row starting at or above y,
+      * unless y is past the bottom of the last row.
+      */
+    public int rowAt(int y) {
+        if (mCount == 0 || y < mTops[0] || y >= mBottoms[mCount - 1]) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = mCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mTops[mid] <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return mFirstPosition + low;
+    }
+}
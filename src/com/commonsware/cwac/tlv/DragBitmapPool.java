@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import android.graphics.Bitmap;
+
+/*
+  * Small bounded pool of mutable bitmaps used for drag snapshots.
+  * Rows of one list are usually the same size, so a handful of
+  * entries is enough to make every grab after the first one
+  * allocation free. When full, the oldest entry is recycled.
+  */
+class DragBitmapPool {
+    private final Bitmap[] mBitmaps;
+    private int mCount;
+    private long mAllocatedBytes;
+
+    DragBitmapPool(int capacity) {
+        mBitmaps = new Bitmap[capacity];
+    }
+
+    Bitmap acquire(int width, int height, Bitmap.Config config) {
+        for (int i = mCount - 1; i >= 0; i--) {
+            Bitmap bitmap = mBitmaps[i];
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height
+                    && bitmap.getConfig() == config) {
+                removeAt(i);
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        mAllocatedBytes += (long) bitmap.getRowBytes() * height;
+        return bitmap;
+    }
+
+    /*
+      * Total bytes of bitmap memory this pool has allocated so far.
+      */
+    long getAllocatedBytes() {
+        return mAllocatedBytes;
+    }
+
+    void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (mCount == mBitmaps.length) {
+            mBitmaps[0].recycle();
+            removeAt(0);
+        }
+        mBitmaps[mCount++] = bitmap;
+    }
+
+    void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mBitmaps[i].recycle();
+            mBitmaps[i] = null;
+        }
+        mCount = 0;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(mBitmaps, index + 1, mBitmaps, index, mCount - index - 1);
+        mBitmaps[--mCount] = null;
+    }
+}
@@ -0,0 +1,733 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import android.database.DataSetObserver;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.ListAdapter;
+
+/*
+  * What TouchListView and TouchGridView do alike while a drag is
+  * under way, so both carry it out the same way: grabber lookup, the
+  * pooled shadow snapshot and the shadow drawn inside the view, the
+  * cells sliding out of the way, auto-scrolling, following the drag
+  * across data changes by stable id, and DragMetrics. The view keeps
+  * the touch handling and answers the few questions that depend on
+  * whether it is a list or a grid through its Host.
+  */
+class DragController {
+    static final int FRAME_DELAY = 16;
+    static final int DEFAULT_SCROLL_SPEED = 1000; // dip per second
+    private static final int DISPLACEMENT_DURATION = 150; // ms for a cell to slide a full row pitch
+    private static final Object NO_GRABBER = new Object();
+
+    interface Host {
+        /*
+          * Look up the drop target for the last touch position again,
+          * e.g. after an auto-scroll step has been laid out.
+          */
+        void updateDropTarget();
+
+        /*
+          * Auto-scrolling moves in multiples of this many pixels.
+          */
+        int getScrollStep();
+
+        /*
+          * Scroll by distance pixels. Returns false when the view is
+          * already at that end.
+          */
+        boolean scrollBy(int distance);
+
+        /*
+          * Called before every auto-scroll step at speed. Return false
+          * to hold still for this frame.
+          */
+        boolean prefetch(float speed);
+
+        /*
+          * Pixels a cell slides in DISPLACEMENT_DURATION ms.
+          */
+        int getDisplacementPitch();
+
+        /*
+          * Where the cell at position is drawn, relative to its slot,
+          * to make room for the drop.
+          */
+        int getDisplacementX(int position);
+
+        int getDisplacementY(int position);
+
+        /*
+          * The view's own drawChild().
+          */
+        boolean drawChild(Canvas canvas, View child, long drawingTime);
+
+        /*
+          * End the drag without dropping and report OUTCOME_CANCEL.
+          */
+        void cancelDrag();
+
+        /*
+          * The adapter's data changed or was invalidated; called
+          * before the drag is looked up again.
+          */
+        void onDataChanged(boolean invalidated);
+
+        /*
+          * Runs once the view has laid out the changed data, whether
+          * or not the drag survived it.
+          */
+        void onDataLaidOut();
+    }
+
+    private final AbsListView mView;
+    private final Host mHost;
+    private final DragEngine mEngine;
+    private final boolean mTranslate; // cells are drawn displaced rather than resized
+    private boolean mDragging;
+    private int mLastY;
+    private float mMaxScrollSpeed;  // px per second at the far edge of a scroll zone
+    private final AutoScroller mAutoScroller = new AutoScroller();
+    private final SparseIntArray mOffsetsX = new SparseIntArray(); // position -> current offset
+    private final SparseIntArray mOffsetsY = new SparseIntArray();
+    private long mLastDisplacementTime;
+    private int mGrabberId = -1;
+    private final IdentityHashMap<View, Object> mGrabbers = new IdentityHashMap<View, Object>();
+    private final DragBitmapPool mBitmapPool;
+    private final Canvas mCaptureCanvas = new Canvas();
+    private Bitmap mCapture;
+    private int mCaptureSave;
+    private Bitmap.Config mBitmapConfig = Bitmap.Config.ARGB_8888;
+    private float mBitmapScale = 1.0f;
+    private int mBackgroundColor;
+    private Bitmap mBitmap;     // the drag's snapshot, back to the pool when it ends
+    private boolean mShadowShown; // the shadow is drawn by drawShadow() rather than elsewhere
+    private View mShadowView;   // drawn instead of mBitmap when set
+    private final Rect mShadowBounds = new Rect();
+    private final Rect mDrawBounds = new Rect();
+    private final Paint mShadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final AdapterObserver mAdapterObserver = new AdapterObserver();
+    private ListAdapter mObservedAdapter;
+    private boolean mTrackIds;  // the adapter had stable ids when the drag started
+    private long mDragId;
+    private long mTargetId;     // cell the drop would go in front of, INVALID_ROW_ID for the end
+    private long[] mBlockIds = new long[0];
+    private int[] mBlock = new int[0];
+    private final DragMetrics mMetrics = new DragMetrics();
+    private TouchListView.DragMetricsListener mMetricsListener;
+    private long mAllocatedBefore;
+
+    DragController(AbsListView view, Host host, DragEngine engine, int poolSize, boolean translate) {
+        mView = view;
+        mHost = host;
+        mEngine = engine;
+        mBitmapPool = new DragBitmapPool(poolSize);
+        mTranslate = translate;
+        mMaxScrollSpeed = DEFAULT_SCROLL_SPEED * view.getResources().getDisplayMetrics().density;
+    }
+
+    void setGrabberId(int grabberId) {
+        mGrabberId = grabberId;
+    }
+
+    /*
+      * Snapshots are taken in config, scaled by scale, on a
+      * background of color.
+      */
+    void setShadowFormat(int color, Bitmap.Config config, float scale) {
+        mBackgroundColor = color;
+        mBitmapConfig = config;
+        mBitmapScale = scale;
+    }
+
+    float getMaxScrollSpeed() {
+        return mMaxScrollSpeed;
+    }
+
+    void setMaxScrollSpeed(float speed) {
+        mMaxScrollSpeed = speed;
+    }
+
+    boolean isDragging() {
+        return mDragging;
+    }
+
+    int getLastY() {
+        return mLastY;
+    }
+
+    /*
+      * The cell's grab handle, looked up once per bind: cells that
+      * are (or are tagged with) a DraggableRowHolder name it
+      * themselves, others are searched for the grabber id. The result
+      * stays cached until the recycler takes the cell back for
+      * rebinding (see onRecycled()).
+      */
+    View getGrabber(View cell) {
+        Object grabber = mGrabbers.get(cell);
+        if (grabber == null) {
+            if (cell instanceof TouchListView.DraggableRowHolder) {
+                grabber = ((TouchListView.DraggableRowHolder) cell).getGrabber();
+            } else if (cell.getTag() instanceof TouchListView.DraggableRowHolder) {
+                grabber = ((TouchListView.DraggableRowHolder) cell.getTag()).getGrabber();
+            } else if (mGrabberId != -1) {
+                grabber = cell.findViewById(mGrabberId);
+            }
+            if (grabber == null) {
+                grabber = NO_GRABBER;
+            }
+            mGrabbers.put(cell, grabber);
+        }
+        return (grabber == NO_GRABBER) ? null : (View) grabber;
+    }
+
+    void onRecycled(View cell) {
+        mGrabbers.remove(cell);
+    }
+
+    /*
+      * Start drawing a snapshot of width by height pixels, on the
+      * returned canvas, into a pooled bitmap. The canvas is scaled
+      * down with the snapshot, so draw at full size.
+      */
+    Canvas beginCapture(int width, int height) {
+        mCapture = mBitmapPool.acquire(Math.max(1, (int) (width * mBitmapScale)),
+                Math.max(1, (int) (height * mBitmapScale)), mBitmapConfig);
+        mCapture.eraseColor(mBackgroundColor);
+        mCaptureCanvas.setBitmap(mCapture);
+        mCaptureSave = mCaptureCanvas.save();
+        mCaptureCanvas.scale(mBitmapScale, mBitmapScale);
+        return mCaptureCanvas;
+    }
+
+    Bitmap endCapture() {
+        mCaptureCanvas.restoreToCount(mCaptureSave);
+        Bitmap bitmap = mCapture;
+        mCapture = null;
+        return bitmap;
+    }
+
+    long getAllocatedBytes() {
+        return mBitmapPool.getAllocatedBytes();
+    }
+
+    /*
+      * A drag starts, after DragEngine.start(), with bitmap (may be
+      * null) as its snapshot.
+      */
+    void start(Bitmap bitmap) {
+        stop();
+        mBitmap = bitmap;
+        mLastDisplacementTime = AnimationUtils.currentAnimationTimeMillis();
+        mDragging = true;
+        recordIds();
+    }
+
+    Bitmap getShadowBitmap() {
+        return mBitmap;
+    }
+
+    /*
+      * Draw the shadow inside the view from now on, in drawShadow():
+      * view if not null, the snapshot otherwise, stretched to width
+      * by height.
+      */
+    void showShadow(View view, int left, int top, int width, int height) {
+        mShadowView = view;
+        mShadowBounds.set(left, top, left + width, top + height);
+        mShadowShown = true;
+        mView.invalidate();
+    }
+
+    /*
+      * Move the shadow drawn inside the view; only the strip it moved
+      * across is redrawn.
+      */
+    void moveShadow(int left, int top) {
+        Rect r = mShadowBounds;
+        mView.invalidate(Math.min(left, r.left), Math.min(top, r.top),
+                Math.max(left, r.left) + r.width(), Math.max(top, r.top) + r.height());
+        r.offsetTo(left, top);
+    }
+
+    int getShadowLeft() {
+        return mShadowBounds.left;
+    }
+
+    int getShadowTop() {
+        return mShadowBounds.top;
+    }
+
+    int getShadowWidth() {
+        return mShadowBounds.width();
+    }
+
+    int getShadowHeight() {
+        return mShadowBounds.height();
+    }
+
+    /*
+      * Call at the end of the view's dispatchDraw().
+      */
+    void drawShadow(Canvas canvas) {
+        if (!mDragging || !mShadowShown) {
+            return;
+        }
+        if (mMetricsListener != null) {
+            mMetrics.shown(SystemClock.uptimeMillis());
+        }
+
+        int saveCount = canvas.save();
+        canvas.translate(mShadowBounds.left, mShadowBounds.top);
+        canvas.clipRect(0, 0, mShadowBounds.width(), mShadowBounds.height());
+        if (mShadowView != null) {
+            if (mBackgroundColor != 0) {
+                canvas.drawColor(mBackgroundColor);
+            }
+            mShadowView.draw(canvas);
+        } else if (mBitmap != null) {
+            mDrawBounds.set(0, 0, mShadowBounds.width(), mShadowBounds.height());
+            canvas.drawBitmap(mBitmap, null, mDrawBounds, mShadowPaint);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    void stop() {
+        if (mDragging) {
+            mView.invalidate();
+        }
+        mDragging = false;
+        mShadowShown = false;
+        mShadowView = null;
+        mAutoScroller.stop();
+        clearOffsets();
+        if (mBitmap != null) {
+            mBitmapPool.release(mBitmap);
+            mBitmap = null;
+        }
+    }
+
+    /*
+      * A touch event moved the drag to y.
+      */
+    void onMove(int y, long eventTime) {
+        mLastY = y;
+        if (mMetricsListener != null) {
+            mMetrics.moved(eventTime);
+        }
+    }
+
+    /*
+      * Start auto-scrolling if the last touch position calls for it.
+      */
+    void autoScroll() {
+        mEngine.adjustScrollBounds(mLastY);
+        if (mEngine.getScrollSpeed(mLastY, mMaxScrollSpeed) != 0) {
+            mAutoScroller.start();
+        }
+    }
+
+    void stopAutoScroll() {
+        mAutoScroller.stop();
+    }
+
+    /*
+      * The drop target moved: cells start sliding towards their new
+      * places.
+      */
+    void restartDisplacement() {
+        mLastDisplacementTime = AnimationUtils.currentAnimationTimeMillis();
+        mView.invalidate();
+    }
+
+    void clearOffsets() {
+        mOffsetsX.clear();
+        mOffsetsY.clear();
+    }
+
+    /*
+      * Move every attached cell's offset a frame's worth closer to
+      * where the Host wants it. Returns true while some cell has not
+      * arrived yet. Call before drawing the children.
+      */
+    boolean stepDisplacement() {
+        if (!mDragging || !mTranslate) {
+            return false;
+        }
+
+        long now = AnimationUtils.currentAnimationTimeMillis();
+        int step = (int) (mHost.getDisplacementPitch() * (now - mLastDisplacementTime) / DISPLACEMENT_DURATION);
+        if (step < 1) {
+            step = 1;
+        }
+        mLastDisplacementTime = now;
+
+        boolean moving = false;
+        int first = mView.getFirstVisiblePosition();
+        int count = mView.getChildCount();
+        for (int i = 0; i < count; i++) {
+            int position = first + i;
+            moving |= stepOffset(mOffsetsX, position, mHost.getDisplacementX(position), step);
+            moving |= stepOffset(mOffsetsY, position, mHost.getDisplacementY(position), step);
+        }
+        return moving;
+    }
+
+    private static boolean stepOffset(SparseIntArray offsets, int position, int target, int step) {
+        int offset = offsets.get(position);
+        if (offset == target) {
+            return false;
+        }
+
+        if (offset < target) {
+            offset = Math.min(offset + step, target);
+        } else {
+            offset = Math.max(offset - step, target);
+        }
+        if (offset == 0) {
+            offsets.delete(position);
+        } else {
+            offsets.put(position, offset);
+        }
+        return offset != target;
+    }
+
+    /*
+      * Draw child at its current offset; the dragged cell's slot
+      * stays empty, the shadow stands in for it.
+      */
+    boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (!mDragging || !mTranslate) {
+            return mHost.drawChild(canvas, child, drawingTime);
+        }
+
+        int position = mView.getFirstVisiblePosition() + mView.indexOfChild(child);
+        if (position == mEngine.getFirstDragPosition()) {
+            return false;
+        }
+
+        int dx = mOffsetsX.get(position);
+        int dy = mOffsetsY.get(position);
+        if (dx == 0 && dy == 0) {
+            return mHost.drawChild(canvas, child, drawingTime);
+        }
+
+        int saveCount = canvas.save();
+        canvas.translate(dx, dy);
+        boolean more = mHost.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
+    /*
+      * Scrolls once per frame while the finger sits in one of the
+      * scroll zones, whether or not touch events keep arriving. The
+      * distance is scaled by the time since the previous step, so
+      * the speed does not depend on frame or digitizer rate; what
+      * doesn't add up to a whole scroll step is carried over.
+      */
+    private final class AutoScroller implements Runnable {
+        private boolean mRunning;
+        private long mLastTime;
+        private float mRemainder;
+
+        void start() {
+            if (!mRunning) {
+                mRunning = true;
+                mLastTime = SystemClock.uptimeMillis();
+                mRemainder = 0;
+                mView.post(this);
+            }
+        }
+
+        void stop() {
+            mRunning = false;
+            mView.removeCallbacks(this);
+        }
+
+        public void run() {
+            float speed = mDragging ? mEngine.getScrollSpeed(mLastY, mMaxScrollSpeed) : 0;
+            if (speed == 0) {
+                mRunning = false;
+                return;
+            }
+
+            // the previous step has been laid out by now, pick up its new drop target
+            mHost.updateDropTarget();
+
+            long now = SystemClock.uptimeMillis();
+            long elapsed = now - mLastTime;
+            mLastTime = now;
+
+            if (!mHost.prefetch(speed)) {
+                // cells ahead are still loading: hold still, so the drop target stays on loaded cells
+                mRemainder = 0;
+                mView.postDelayed(this, FRAME_DELAY);
+                return;
+            }
+
+            int step = Math.max(mHost.getScrollStep(), 1);
+            float distance = speed * elapsed / 1000f + mRemainder;
+            int dy = (int) (distance / step) * step;
+            mRemainder = distance - dy;
+            if (dy != 0 && !mHost.scrollBy(dy)) {
+                mRunning = false;
+                return;
+            }
+            if (mMetricsListener != null) {
+                mMetrics.mAutoScrollDistance += Math.abs(dy);
+                mMetrics.mAutoScrollMillis += elapsed;
+            }
+            mView.postDelayed(this, FRAME_DELAY);
+        }
+    }
+
+    /*
+      * Follow the view's adapter; call after the view's own
+      * setAdapter(). Cached grabbers are dropped, as the recycler
+      * discards the old cells without telling the RecyclerListener.
+      */
+    void setAdapter(ListAdapter adapter) {
+        if (mObservedAdapter != null) {
+            mObservedAdapter.unregisterDataSetObserver(mAdapterObserver);
+        }
+        mGrabbers.clear();
+        mObservedAdapter = adapter;
+        if (adapter != null) {
+            adapter.registerDataSetObserver(mAdapterObserver);
+        }
+    }
+
+    /*
+      * With stable ids, remember the dragged cells by id, so the drag
+      * can survive a data change (see AdapterObserver).
+      */
+    private void recordIds() {
+        ListAdapter adapter = mView.getAdapter();
+        mTrackIds = adapter.hasStableIds();
+        if (!mTrackIds) {
+            return;
+        }
+
+        mDragId = adapter.getItemId(mEngine.getFirstDragPosition());
+        int count = mEngine.getBlockCount();
+        if (mBlockIds.length < count) {
+            mBlockIds = new long[count];
+            mBlock = new int[count];
+        }
+        int[] block = mEngine.getBlock();
+        for (int i = 0; i < count; i++) {
+            mBlockIds[i] = adapter.getItemId(block[i]);
+        }
+        recordTargetId();
+    }
+
+    /*
+      * Call whenever the drop position changes.
+      */
+    void recordTargetId() {
+        if (!mTrackIds) {
+            return;
+        }
+
+        // the drop position doesn't count the dragged cell, the adapter does
+        int to = mEngine.getDragPosition();
+        int position = (to < mEngine.getFirstDragPosition()) ? to : to + 1;
+        ListAdapter adapter = mView.getAdapter();
+        mTargetId = (position >= 0 && position < adapter.getCount())
+                ? adapter.getItemId(position) : AdapterView.INVALID_ROW_ID;
+    }
+
+    /*
+      * Position of the item with the given id, searching outwards
+      * from near; INVALID_POSITION if it is gone.
+      */
+    static int findPosition(ListAdapter adapter, long id, int near, int count) {
+        for (int d = 0; near - d >= 0 || near + d < count; d++) {
+            int below = near + d;
+            if (below >= 0 && below < count && adapter.getItemId(below) == id) {
+                return below;
+            }
+            int above = near - d;
+            if (d > 0 && above >= 0 && above < count && adapter.getItemId(above) == id) {
+                return above;
+            }
+        }
+        return AdapterView.INVALID_POSITION;
+    }
+
+    /*
+      * Keeps a drag going across notifyDataSetChanged(). With stable
+      * ids, the dragged cell, the rest of a block and the drop
+      * position are looked up again by id, searching outwards from
+      * where they were; without them, or when the dragged cell is
+      * gone, the drag is cancelled. Either way only positions change
+      * here: the cells are brought up to date once the view has laid
+      * out the new data. Registered after the view's own observer, so
+      * it is called before the view has caught up and must ask the
+      * adapter itself.
+      */
+    private final class AdapterObserver extends DataSetObserver implements Runnable {
+        @Override
+        public void onChanged() {
+            mHost.onDataChanged(false);
+            if (!mDragging) {
+                return;
+            }
+            if (!mTrackIds || !remap()) {
+                mHost.cancelDrag();
+            }
+            mView.removeCallbacks(this);
+            mView.post(this);
+        }
+
+        @Override
+        public void onInvalidated() {
+            mHost.onDataChanged(true);
+            if (mDragging) {
+                mHost.cancelDrag();
+                mView.removeCallbacks(this);
+                mView.post(this);
+            }
+        }
+
+        private boolean remap() {
+            ListAdapter adapter = mView.getAdapter();
+            int count = adapter.getCount();
+            int first = findPosition(adapter, mDragId, mEngine.getFirstDragPosition(), count);
+            if (first < 0) {
+                return false;
+            }
+
+            int blockCount = mEngine.getBlockCount();
+            if (blockCount > 1) {
+                int[] block = mEngine.getBlock();
+                for (int i = 0; i < blockCount; i++) {
+                    mBlock[i] = findPosition(adapter, mBlockIds[i], block[i], count);
+                    if (mBlock[i] < 0) {
+                        return false;
+                    }
+                }
+                Arrays.sort(mBlock, 0, blockCount);
+                for (int i = 0; i < blockCount; i++) {
+                    mBlockIds[i] = adapter.getItemId(mBlock[i]);
+                }
+            }
+
+            int to = mEngine.getDragPosition();
+            int target = (to < mEngine.getFirstDragPosition()) ? to : to + 1;
+            if (mTargetId == AdapterView.INVALID_ROW_ID) {
+                target = count;
+            } else {
+                int found = findPosition(adapter, mTargetId, target, count);
+                if (found >= 0) {
+                    target = found;
+                }
+            }
+            to = (target > first) ? target - 1 : target;
+
+            mEngine.remap(first, Math.max(0, Math.min(to, count - 1)));
+            if (blockCount > 1) {
+                mEngine.setBlock(mBlock, blockCount);
+            }
+            return true;
+        }
+
+        /*
+          * After the view has laid out the new data: the offsets were
+          * kept by position, start them over.
+          */
+        public void run() {
+            if (mDragging) {
+                clearOffsets();
+                if (mTranslate) {
+                    restartDisplacement();
+                }
+            }
+            mHost.onDataLaidOut();
+        }
+    }
+
+    /*
+      * Receives a DragMetrics summary at the end of every drag.
+      */
+    void setMetricsListener(TouchListView.DragMetricsListener l) {
+        mMetricsListener = l;
+    }
+
+    boolean isMeasuring() {
+        return mMetricsListener != null;
+    }
+
+    /*
+      * The metrics of the current drag; only kept while isMeasuring().
+      */
+    DragMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /*
+      * A grab begins, before its snapshot is taken.
+      */
+    void beginMetrics(long downTime) {
+        if (mMetricsListener != null) {
+            mMetrics.reset(downTime);
+            mAllocatedBefore = mBitmapPool.getAllocatedBytes();
+        }
+    }
+
+    /*
+      * The grab is done and its snapshot taken; shown tells whether
+      * the shadow is already on screen.
+      */
+    void endMetrics(boolean shown) {
+        if (mMetricsListener != null) {
+            mMetrics.mShadowBytes = mBitmapPool.getAllocatedBytes() - mAllocatedBefore;
+            if (shown) {
+                mMetrics.shown(SystemClock.uptimeMillis());
+            }
+        }
+    }
+
+    void reportMetrics(int outcome) {
+        if (mMetricsListener != null) {
+            mMetrics.mOutcome = outcome;
+            mMetricsListener.onDragFinished(mMetrics);
+        }
+    }
+
+    /*
+      * The view left the window: nothing may stay scheduled or pooled.
+      */
+    void onDetached() {
+        stop();
+        mBitmapPool.clear();
+        mGrabbers.clear();
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+/*
+  * The drag and drop decisions of TouchListView and TouchGridView,
+  * free of any Android types so they can be exercised and profiled on
+  * a plain JVM. It is fed coordinates and row geometry and answers
+  * with drop targets, the rows to expand or displace, auto-scroll
+  * speeds and what a release means. The views only translate touch
+  * events and children into these calls and carry out the answers.
+  */
+class DragEngine {
+    static final int REMOVE_SWIPE = 0;
+    static final int REMOVE_SLIDE_RIGHT = 1;
+    static final int REMOVE_SLIDE_LEFT = 2;
+    static final int RELEASE_DROP = 0;
+    static final int RELEASE_REMOVE = 1;
+
+    /*
+      * Hit-testing of the rows currently laid out, in list
+      * coordinates. Returns -1 when no row is at y.
+      */
+    interface RowGeometry {
+        int rowAt(int y);
+    }
+
+    private int mDragPos;      // which item is being dragged
+    private int mFirstDragPos; // where was the dragged item originally
+    private int mDragPoint;    // at what offset inside the item did the user grab it
+    private int mRowSpan;      // height of the dragged row plus divider
+    private int mUpperBound;
+    private int mLowerBound;
+    private int mHeight;
+    private int[] mBlock = new int[0]; // sorted positions moving together, when more than one
+    private int mBlockCount;
+    private final int mTouchSlop;
+    private final int mRemoveMode;
+    private final int mItemHeightNormal;
+
+    DragEngine(int touchSlop, int removeMode, int itemHeightNormal) {
+        mTouchSlop = touchSlop;
+        mRemoveMode = removeMode;
+        mItemHeightNormal = itemHeightNormal;
+    }
+
+    void start(int position, int y, int rowTop, int rowSpan, int listHeight) {
+        mDragPoint = y - rowTop;
+        mDragPos = position;
+        mFirstDragPos = position;
+        mRowSpan = rowSpan;
+        mHeight = listHeight;
+        mUpperBound = Math.min(y - mTouchSlop, mHeight / 3);
+        mLowerBound = Math.max(y + mTouchSlop, mHeight * 2 / 3);
+        mBlockCount = 0;
+    }
+
+    /*
+      * Make the gesture move the count sorted positions as one block.
+      * The dragged row, which start() was given, must be among them.
+      */
+    void setBlock(int[] positions, int count) {
+        if (mBlock.length < count) {
+            mBlock = new int[count];
+        }
+        System.arraycopy(positions, 0, mBlock, 0, count);
+        mBlockCount = count;
+    }
+
+    boolean isBlock() {
+        return mBlockCount > 1;
+    }
+
+    int getBlockCount() {
+        return mBlockCount;
+    }
+
+    /*
+      * The block's positions; only the first getBlockCount() are valid.
+      */
+    int[] getBlock() {
+        return mBlock;
+    }
+
+    boolean isInBlock(int position) {
+        int low = 0;
+        int high = mBlockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mBlock[mid] < position) {
+                low = mid + 1;
+            } else if (mBlock[mid] > position) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+      * Where the first row of the block lands. The drop position is
+      * counted in the list without the dragged row; the other block
+      * rows above it still take up a position there, but will not
+      * once the block has been taken out.
+      */
+    int getBlockTarget() {
+        int above = 0;
+        for (int i = 0; i < mBlockCount; i++) {
+            int position = mBlock[i];
+            if (position == mFirstDragPos) {
+                continue;
+            }
+            if (position > mFirstDragPos) {
+                position--;
+            }
+            if (position >= mDragPos) {
+                break;
+            }
+            above++;
+        }
+        return mDragPos - above;
+    }
+
+    /*
+      * Spell out moving the count sorted positions in from so they
+      * end up at to, to + 1, ... as single moves, each given as a
+      * (from, to) pair in moves, in the order they must be applied.
+      * Rows moving down are moved last first and rows moving up first
+      * first, so none of them shifts a row that is still to be moved.
+      * Returns the number of pairs.
+      */
+    static int getSingleMoves(int[] from, int count, int to, int[] moves) {
+        int pairs = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            if (from[i] < to + i) {
+                moves[pairs * 2] = from[i];
+                moves[pairs * 2 + 1] = to + i;
+                pairs++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (from[i] > to + i) {
+                moves[pairs * 2] = from[i];
+                moves[pairs * 2 + 1] = to + i;
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    int getFirstDragPosition() {
+        return mFirstDragPos;
+    }
+
+    int getDragPosition() {
+        return mDragPos;
+    }
+
+    int getDragPoint() {
+        return mDragPoint;
+    }
+
+    int getRowSpan() {
+        return mRowSpan;
+    }
+
+    /*
+      * Make target the current drop position. Returns false if it
+      * already was (and force is not set) or is not a valid row.
+      */
+    boolean moveTo(int target, boolean force) {
+        if (target < 0 || (!force && target == mDragPos)) {
+            return false;
+        }
+        mDragPos = target;
+        return true;
+    }
+
+    /*
+      * Drop target while rows are resized around the gap: the row
+      * half a normal row above the grab point, shifted by one when at
+      * or above the original position.
+      */
+    int getTarget(int y, RowGeometry geometry) {
+        int adjustedy = y - mDragPoint - (mItemHeightNormal / 2);
+        int pos = geometry.rowAt(adjustedy);
+        if (pos >= 0) {
+            if (pos <= mFirstDragPos) {
+                pos += 1;
+            }
+        } else if (adjustedy < 0) {
+            pos = 0;
+        }
+        return pos;
+    }
+
+    /*
+      * Drop target while rows are displaced rather than resized: the
+      * layout is untouched, so it is the row under the center of the
+      * dragged row, looked up by content offset. anchorTop is where
+      * the row at firstVisible currently starts.
+      */
+    int getTranslatedTarget(int y, RowHeightIndex index, int firstVisible, int anchorTop) {
+        int center = y - mDragPoint + (mRowSpan / 2);
+        return index.indexAt(index.offsetOf(firstVisible) - anchorTop + center);
+    }
+
+    /*
+      * Child index of the row that opens up as the gap, for the
+      * given first visible position.
+      */
+    int getGapChildIndex(int firstVisible) {
+        int actualDragPos = mDragPos - firstVisible;
+
+        if (mDragPos > mFirstDragPos) {
+            actualDragPos++; //wtf? the collapsed original row still sits above the gap
+        }
+        return actualDragPos;
+    }
+
+    int getHiddenChildIndex(int firstVisible) {
+        return mFirstDragPos - firstVisible;
+    }
+
+    /*
+      * The adapter changed under the drag and the dragged row and the
+      * drop position were found again at these positions.
+      */
+    void remap(int firstDragPos, int dragPos) {
+        mFirstDragPos = firstDragPos;
+        mDragPos = dragPos;
+    }
+
+    boolean isOverOrigin() {
+        return mDragPos == mFirstDragPos;
+    }
+
+    /*
+      * How far the row at position is displaced while rows are
+      * translated rather than resized.
+      */
+    int getDisplacement(int position) {
+        return getShift(position) * mRowSpan;
+    }
+
+    /*
+      * By how many slots the item at position moves to make room:
+      * -1 when it follows the dragged item into its slot, 1 when it
+      * makes room at the drop position, 0 otherwise.
+      */
+    int getShift(int position) {
+        if (mFirstDragPos < position && position <= mDragPos) {
+            return -1;
+        }
+        if (mDragPos <= position && position < mFirstDragPos) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /*
+      * Top of the drag shadow for a finger at y, kept inside the list.
+      */
+    int getShadowTop(int y, int shadowHeight) {
+        return Math.max(Math.min(y - mDragPoint, mHeight - shadowHeight), 0);
+    }
+
+    /*
+      * The scroll zones start where the finger went down, so grabbing
+      * close to an edge doesn't scroll right away, and widen to the
+      * outer thirds once the finger has left them.
+      */
+    void adjustScrollBounds(int y) {
+        if (y >= mHeight / 3) {
+            mUpperBound = mHeight / 3;
+        }
+        if (y <= mHeight * 2 / 3) {
+            mLowerBound = mHeight * 2 / 3;
+        }
+    }
+
+    /*
+      * Auto-scroll speed, proportional to how deep y is inside the
+      * upper or lower scroll zone. Positive values move towards the
+      * end of the list. A zone that has no room yet, because the row
+      * was grabbed within touch slop of that edge, does not scroll.
+      */
+    float getScrollSpeed(int y, float maxSpeed) {
+        if (y > mLowerBound) {
+            int zone = mHeight - mLowerBound;
+            return (zone > 0) ? maxSpeed * clampRatio((float) (y - mLowerBound) / zone) : 0;
+        } else if (y < mUpperBound) {
+            int zone = mUpperBound;
+            return (zone > 0) ? -maxSpeed * clampRatio((float) (mUpperBound - y) / zone) : 0;
+        }
+        return 0;
+    }
+
+    private static float clampRatio(float ratio) {
+        return Math.max(0f, Math.min(1f, ratio));
+    }
+
+    /*
+      * What letting go at x means, given the horizontal extent of
+      * the drag shadow.
+      */
+    int getRelease(int x, int shadowLeft, int shadowWidth) {
+        if (mRemoveMode == REMOVE_SLIDE_RIGHT && x > shadowLeft + (shadowWidth * 3 / 4)) {
+            return RELEASE_REMOVE;
+        } else if (mRemoveMode == REMOVE_SLIDE_LEFT && x < shadowLeft + (shadowWidth / 4)) {
+            return RELEASE_REMOVE;
+        }
+        return RELEASE_DROP;
+    }
+
+    /*
+      * Whether letting go of a row swiped sideways by dx dismisses
+      * it: when it was pulled past half its width, or flung sideways,
+      * in the direction it was pulled, at minVelocity or faster.
+      */
+    static boolean isSwipeDismiss(int dx, float velocityX, float velocityY, int rowWidth,
+                                  float minVelocity) {
+        if (Math.abs(dx) > rowWidth / 2) {
+            return true;
+        }
+        return Math.abs(velocityX) >= minVelocity && Math.abs(velocityY) < Math.abs(velocityX)
+                && (velocityX > 0) == (dx > 0);
+    }
+}
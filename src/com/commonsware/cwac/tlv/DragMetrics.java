@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+/*
+  * Summary of one drag gesture, or of one swipe with
+  * remove_mode="swipe", handed to a TouchListView.DragMetricsListener
+  * when the gesture ends. The same instance is reused for every
+  * gesture, so copy out what you want to keep.
+  */
+public final class DragMetrics {
+    public static final int OUTCOME_DROP = 0;
+    public static final int OUTCOME_SLIDE_REMOVE = 1;
+    public static final int OUTCOME_FLING_REMOVE = 2;  // a row swiped off, remove_mode="swipe"
+    public static final int OUTCOME_CANCEL = 3;
+
+    int mOutcome;
+    long mDownTime;
+    long mShownMillis;
+    int mExpansionPasses;
+    int mAutoScrollDistance;
+    long mAutoScrollMillis;
+    long mLastMoveTime;
+    long mLongestMoveGapMillis;
+    long mShadowBytes;
+
+    void reset(long downTime) {
+        mOutcome = OUTCOME_DROP;
+        mDownTime = downTime;
+        mShownMillis = -1;
+        mExpansionPasses = 0;
+        mAutoScrollDistance = 0;
+        mAutoScrollMillis = 0;
+        mLastMoveTime = downTime;
+        mLongestMoveGapMillis = 0;
+        mShadowBytes = 0;
+    }
+
+    void shown(long now) {
+        if (mShownMillis < 0) {
+            mShownMillis = now - mDownTime;
+        }
+    }
+
+    void moved(long eventTime) {
+        mLongestMoveGapMillis = Math.max(mLongestMoveGapMillis, eventTime - mLastMoveTime);
+        mLastMoveTime = eventTime;
+    }
+
+    /*
+      * One of the OUTCOME_* constants.
+      */
+    public int getOutcome() {
+        return mOutcome;
+    }
+
+    /*
+      * Milliseconds from ACTION_DOWN until the drag shadow was first
+      * shown.
+      */
+    public long getTimeToShadowMillis() {
+        return mShownMillis;
+    }
+
+    /*
+      * Number of times rows were rearranged for a new drop target.
+      */
+    public int getExpansionPasses() {
+        return mExpansionPasses;
+    }
+
+    public int getAutoScrollDistance() {
+        return mAutoScrollDistance;
+    }
+
+    public long getAutoScrollMillis() {
+        return mAutoScrollMillis;
+    }
+
+    /*
+      * Longest time between two touch events during the drag.
+      */
+    public long getLongestMoveGapMillis() {
+        return mLongestMoveGapMillis;
+    }
+
+    /*
+      * Bitmap memory newly allocated for the drag shadow; 0 when a
+      * pooled bitmap was reused or the shadow is drawn live.
+      */
+    public long getShadowBytes() {
+        return mShadowBytes;
+    }
+}
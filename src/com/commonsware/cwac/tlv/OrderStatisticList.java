@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.Random;
+
+/*
+  * List backed by an implicit treap: every node knows the size of
+  * its subtree, so get, insert, remove and move by index are all
+  * O(log n) expected, instead of the O(n) array shifts of an
+  * ArrayList.
+  */
+class OrderStatisticList<T> {
+    private static final class Node<T> {
+        T value;
+        final int priority;
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private final Random mRandom = new Random();
+    private Node<T> mRoot;
+    // results of split(), kept in fields so splitting doesn't allocate
+    private Node<T> mSplitLeft;
+    private Node<T> mSplitRight;
+
+    int size() {
+        return size(mRoot);
+    }
+
+    T get(int index) {
+        return nodeAt(index).value;
+    }
+
+    void set(int index, T value) {
+        nodeAt(index).value = value;
+    }
+
+    void add(T value) {
+        mRoot = merge(mRoot, new Node<T>(value, mRandom.nextInt()));
+    }
+
+    void add(int index, T value) {
+        insert(index, new Node<T>(value, mRandom.nextInt()));
+    }
+
+    T remove(int index) {
+        return detach(index).value;
+    }
+
+    /*
+      * Moves the node itself, so a reorder allocates nothing.
+      */
+    void move(int from, int to) {
+        if (from != to) {
+            insert(to, detach(from));
+        }
+    }
+
+    /*
+      * Take the elements at the count sorted indices out and put
+      * them back, in the same order, starting at index to of the
+      * remaining list. The nodes are moved as one subtree, so this is
+      * O(count log n).
+      */
+    void move(int[] from, int count, int to) {
+        Node<T> block = null;
+        for (int i = count - 1; i >= 0; i--) {
+            block = merge(detach(from[i]), block);
+        }
+        insert(to, block);
+    }
+
+    void clear() {
+        mRoot = null;
+    }
+
+    /*
+      * Put a detached subtree back in so it starts at index.
+      */
+    private void insert(int index, Node<T> node) {
+        checkPosition(index, size());
+        split(mRoot, index);
+        Node<T> right = mSplitRight;
+        mRoot = merge(merge(mSplitLeft, node), right);
+    }
+
+    private Node<T> detach(int index) {
+        checkPosition(index, size() - 1);
+        split(mRoot, index);
+        Node<T> left = mSplitLeft;
+        split(mSplitRight, 1);
+        Node<T> node = mSplitLeft;
+        mRoot = merge(left, mSplitRight);
+        return node;
+    }
+
+    private Node<T> nodeAt(int index) {
+        checkPosition(index, size() - 1);
+        Node<T> node = mRoot;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node;
+            }
+        }
+    }
+
+    /*
+      * Split node into mSplitLeft (the first count elements) and
+      * mSplitRight (the rest).
+      */
+    private void split(Node<T> node, int count) {
+        if (node == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+            return;
+        }
+
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            split(node.left, count);
+            node.left = mSplitRight;
+            update(node);
+            mSplitRight = node;
+        } else {
+            split(node.right, count - leftSize - 1);
+            node.right = mSplitLeft;
+            update(node);
+            mSplitLeft = node;
+        }
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private static int size(Node<?> node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    private static void update(Node<?> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static void checkPosition(int index, int max) {
+        if (index < 0 || index > max) {
+            throw new IndexOutOfBoundsException("Invalid index " + index + ", size is " + (max + 1));
+        }
+    }
+}
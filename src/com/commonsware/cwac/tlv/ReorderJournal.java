@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/*
+  * Collects the moves and removes reported by a TouchListView's
+  * DropListener and RemoveListener and writes them to a Sink in
+  * batches, on a background executor, once no new operation has
+  * arrived for the debounce delay. Your in-memory adapter stays the
+  * authoritative order; the journal only catches the persistent copy
+  * up with it.
+  *
+  * Operations are kept as packed int triples (kind, from, to).
+  * A move that continues the previous one is folded into it
+  * (A->B then B->C becomes A->C, and A->B then B->A cancels out),
+  * and removing a row that was just moved removes it from where it
+  * came from.
+  */
+public class ReorderJournal {
+    public static final int MOVE = 0;
+    public static final int REMOVE = 1;
+
+    public interface Sink {
+        /*
+          * Apply count operations stored as (kind, from, to) triples
+          * in ops, in order. Positions are as they were at the time
+          * of each operation. Called on the journal's executor.
+          */
+        void apply(int[] ops, int count) throws Exception;
+    }
+
+    private final Sink mSink;
+    private final ScheduledExecutorService mExecutor;
+    private final long mDebounceMillis;
+    private final Object mFlushLock = new Object();
+    private int[] mOps = new int[3 * 16];
+    private int mCount;
+    private int[] mFlushOps = new int[3 * 16];
+    private ScheduledFuture<?> mPendingFlush;
+
+    private final Runnable mFlushTask = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    public ReorderJournal(Sink sink, ScheduledExecutorService executor, long debounceMillis) {
+        mSink = sink;
+        mExecutor = executor;
+        mDebounceMillis = debounceMillis;
+    }
+
+    public synchronized void recordMove(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        appendMove(from, to);
+        scheduleFlush();
+    }
+
+    /*
+      * Record a block drop (see TouchListView.MultiDropListener) as
+      * the single moves that make it up.
+      */
+    public synchronized void recordMove(int[] from, int to) {
+        int[] moves = new int[from.length * 2];
+        int pairs = DragEngine.getSingleMoves(from, from.length, to, moves);
+        if (pairs == 0) {
+            return;
+        }
+        for (int i = 0; i < pairs; i++) {
+            appendMove(moves[i * 2], moves[i * 2 + 1]);
+        }
+        scheduleFlush();
+    }
+
+    public synchronized void recordRemove(int which) {
+        int last = (mCount - 1) * 3;
+        if (mCount > 0 && mOps[last] == MOVE && mOps[last + 2] == which) {
+            mOps[last] = REMOVE;
+            mOps[last + 2] = mOps[last + 1];
+        } else {
+            append(REMOVE, which, which);
+        }
+        scheduleFlush();
+    }
+
+    /*
+      * Record a batch of removals (see TouchListView.BatchRemoveListener)
+      * as single removes, from the bottom up.
+      */
+    public synchronized void recordRemove(int[] which) {
+        for (int i = which.length - 1; i >= 0; i--) {
+            recordRemove(which[i]);
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return mCount;
+    }
+
+    /*
+      * Hand everything recorded so far to the sink, on the calling
+      * thread. Flushes never overlap. If the sink fails, the batch is
+      * put back in front of anything recorded meanwhile and retried
+      * with the next flush.
+      */
+    public void flush() {
+        synchronized (mFlushLock) {
+            int count;
+            synchronized (this) {
+                if (mPendingFlush != null) {
+                    mPendingFlush.cancel(false);
+                    mPendingFlush = null;
+                }
+                count = mCount;
+                if (count == 0) {
+                    return;
+                }
+
+                // swap buffers so recording can go on while the sink runs
+                int[] ops = mOps;
+                mOps = mFlushOps;
+                mFlushOps = ops;
+                mCount = 0;
+            }
+
+            try {
+                mSink.apply(mFlushOps, count);
+            } catch (Exception e) {
+                Log.w("cwac", "Exception flushing reorder journal", e);
+                requeue(mFlushOps, count);
+            }
+        }
+    }
+
+    private synchronized void requeue(int[] ops, int count) {
+        ensureCapacity(mCount + count);
+        System.arraycopy(mOps, 0, mOps, count * 3, mCount * 3);
+        System.arraycopy(ops, 0, mOps, 0, count * 3);
+        mCount += count;
+    }
+
+    private void appendMove(int from, int to) {
+        int last = (mCount - 1) * 3;
+        if (mCount > 0 && mOps[last] == MOVE && mOps[last + 2] == from) {
+            if (mOps[last + 1] == to) {
+                mCount--;
+            } else {
+                mOps[last + 2] = to;
+            }
+        } else {
+            append(MOVE, from, to);
+        }
+    }
+
+    private void append(int kind, int from, int to) {
+        ensureCapacity(mCount + 1);
+        int i = mCount * 3;
+        mOps[i] = kind;
+        mOps[i + 1] = from;
+        mOps[i + 2] = to;
+        mCount++;
+    }
+
+    private void ensureCapacity(int count) {
+        if (mOps.length < count * 3) {
+            int[] ops = new int[Math.max(count * 3, mOps.length * 2)];
+            System.arraycopy(mOps, 0, ops, 0, mCount * 3);
+            mOps = ops;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (mPendingFlush != null) {
+            mPendingFlush.cancel(false);
+        }
+        mPendingFlush = mExecutor.schedule(mFlushTask, mDebounceMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import android.widget.ListAdapter;
+
+/*
+  * An adapter that can apply a TouchListView drop or removal to its
+  * own data. When the list's adapter implements this, TouchListView
+  * calls move() or remove() itself before notifying the DropListener
+  * or RemoveListener, and dragging works without any listener set.
+  * Implementations should raise a single change notification per
+  * call.
+  */
+public interface ReorderableAdapter extends ListAdapter {
+    void move(int from, int to);
+
+    void remove(int which);
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+/*
+  * Row heights of the whole list kept in a Fenwick tree, so the
+  * offset of a row and the row at an offset are both O(log n),
+  * including rows that are not attached. Rows that were never
+  * measured count with an estimated height.
+  */
+class RowHeightIndex {
+    private long[] mTree = new long[1];  // 1-based
+    private int[] mHeights = new int[0];
+    private int mSize;
+    private int mMask;  // highest power of two <= mSize
+
+    void reset(int size, int estimate) {
+        if (mHeights.length < size) {
+            mHeights = new int[size];
+            mTree = new long[size + 1];
+        }
+        mSize = size;
+        mMask = Integer.highestOneBit(Math.max(size, 1));
+
+        // O(n) build: push each node's sum up to its parent once
+        for (int i = 1; i <= size; i++) {
+            mHeights[i - 1] = estimate;
+            mTree[i] = estimate;
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                mTree[parent] += mTree[i];
+            }
+        }
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int get(int index) {
+        return mHeights[index];
+    }
+
+    void set(int index, int height) {
+        int delta = height - mHeights[index];
+        if (delta == 0) {
+            return;
+        }
+        mHeights[index] = height;
+        for (int i = index + 1; i <= mSize; i += i & -i) {
+            mTree[i] += delta;
+        }
+    }
+
+    /*
+      * Sum of the heights of all rows before index.
+      */
+    long offsetOf(int index) {
+        long sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    /*
+      * Row containing the given offset, clamped to the first and
+      * last row.
+      */
+    int indexAt(long offset) {
+        if (mSize == 0) {
+            return -1;
+        }
+        if (offset < 0) {
+            return 0;
+        }
+
+        int pos = 0;
+        for (int step = mMask; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= mSize && mTree[next] <= offset) {
+                pos = next;
+                offset -= mTree[next];
+            }
+        }
+        return Math.min(pos, mSize - 1);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+/*
+  * ReorderJournal.Sink for a table whose rows carry their list
+  * position in an integer column (0-based, no gaps, no UNIQUE
+  * constraint). Each batch runs in a single transaction.
+  */
+public class SQLiteReorderSink implements ReorderJournal.Sink {
+    private static final int PARKED = -1;
+
+    private final SQLiteDatabase mDb;
+    private final String mTable;
+    private final String mColumn;
+    private final String mWhereAt;
+    private final String mShiftUp;
+    private final String mShiftDown;
+    private final ContentValues mValues = new ContentValues();
+    private final String[] mArgs = new String[1];
+
+    public SQLiteReorderSink(SQLiteDatabase db, String table, String positionColumn) {
+        mDb = db;
+        mTable = table;
+        mColumn = positionColumn;
+        mWhereAt = positionColumn + "=?";
+        mShiftUp = "UPDATE " + table + " SET " + positionColumn + "=" + positionColumn
+                + "-1 WHERE " + positionColumn + ">? AND " + positionColumn + "<=?";
+        mShiftDown = "UPDATE " + table + " SET " + positionColumn + "=" + positionColumn
+                + "+1 WHERE " + positionColumn + ">=? AND " + positionColumn + "<?";
+    }
+
+    public void apply(int[] ops, int count) {
+        mDb.beginTransaction();
+        try {
+            for (int i = 0; i < count * 3; i += 3) {
+                if (ops[i] == ReorderJournal.MOVE) {
+                    move(ops[i + 1], ops[i + 2]);
+                } else {
+                    remove(ops[i + 1]);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    private void move(int from, int to) {
+        // park the moved row, close the hole, then drop it at its new place
+        setPosition(from, PARKED);
+        if (from < to) {
+            mDb.execSQL(mShiftUp, new Object[] { from, to });
+        } else {
+            mDb.execSQL(mShiftDown, new Object[] { to, from });
+        }
+        setPosition(PARKED, to);
+    }
+
+    private void remove(int which) {
+        mArgs[0] = String.valueOf(which);
+        mDb.delete(mTable, mWhereAt, mArgs);
+        mDb.execSQL(mShiftUp, new Object[] { which, Integer.MAX_VALUE });
+    }
+
+    private void setPosition(int at, int position) {
+        mValues.clear();
+        mValues.put(mColumn, position);
+        mArgs[0] = String.valueOf(at);
+        mDb.update(mTable, mValues, mWhereAt, mArgs);
+    }
+}
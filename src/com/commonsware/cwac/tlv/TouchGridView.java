@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.widget.GridView;
+import android.widget.ListAdapter;
+
+/*
+  * A GridView whose cells can be rearranged by drag and drop, driven
+  * by the same DragEngine and DragController as TouchListView and
+  * reporting through the same listeners and ReorderableAdapter. The
+  * dragged cell follows the finger as a snapshot drawn in
+  * dispatchDraw(). The cells between its old and new position slide
+  * one slot along row-major order by being drawn offset, so the grid
+  * is not laid out again until the drop. Drop targets are looked up
+  * in a CellIndex of the attached cells. Near the top or bottom edge
+  * the grid scrolls a row at a time.
+  */
+public class TouchGridView extends GridView {
+    private DragEngine mEngine;
+    private DragController mController;
+    private TouchListView.DragListener mDragListener;
+    private TouchListView.DropListener mDropListener;
+    private RecyclerListener mRecyclerListener;
+    private final CellIndex mCells = new CellIndex();
+    private int mDragPointX;
+
+    public TouchGridView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public TouchGridView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+
+        // cells going to the scrap heap get rebound, drop what we know about them
+        super.setRecyclerListener(new RecyclerListener() {
+            public void onMovedToScrapHeap(View view) {
+                mController.onRecycled(view);
+                if (mRecyclerListener != null) {
+                    mRecyclerListener.onMovedToScrapHeap(view);
+                }
+            }
+        });
+
+        int grabberId = -1;
+        int dragndropBackgroundColor = 0x00000000;
+        int scrollSpeed = -1;
+
+        if (attrs != null) {
+            TypedArray a = getContext()
+                    .obtainStyledAttributes(attrs,
+                            R.styleable.TouchGridView,
+                            0, 0);
+
+            grabberId = a.getResourceId(R.styleable.TouchGridView_grabber, -1);
+            dragndropBackgroundColor = a.getColor(R.styleable.TouchGridView_dragndrop_background, 0x00000000);
+            scrollSpeed = a.getDimensionPixelSize(R.styleable.TouchGridView_scroll_speed, -1);
+
+            a.recycle();
+        }
+
+        // cells are never removed by dragging them off
+        mEngine = new DragEngine(ViewConfiguration.get(context).getScaledTouchSlop(), -1, 0);
+        mController = new DragController(this, new GridHost(), mEngine, 1, true);
+        mController.setGrabberId(grabberId);
+        mController.setShadowFormat(dragndropBackgroundColor, Bitmap.Config.ARGB_8888, 1.0f);
+        if (scrollSpeed >= 0) {
+            mController.setMaxScrollSpeed(scrollSpeed);
+        }
+
+        // an adapter set by the superclass constructor has no observer yet
+        mController.setAdapter(getAdapter());
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (isDragEnabled() && ev.getAction() == MotionEvent.ACTION_DOWN) {
+            int x = (int) ev.getX();
+            int y = (int) ev.getY();
+            int position = (x >= 0 && x < getWidth()) ? getCells().cellAt(x, y) : INVALID_POSITION;
+            if (position != INVALID_POSITION) {
+                View cell = getChildAt(position - getFirstVisiblePosition());
+                View grabber = mController.getGrabber(cell);
+                if (grabber != null) {
+                    int cellX = x - cell.getLeft();
+                    int cellY = y - cell.getTop();
+                    if (grabber.getLeft() < cellX && cellX < grabber.getRight()
+                            && grabber.getTop() < cellY && cellY < grabber.getBottom()) {
+                        mController.beginMetrics(ev.getDownTime());
+                        if (mController.isMeasuring()) {
+                            TraceCompat.beginSection("TouchGridView.startDragging");
+                        }
+                        startDragging(position, cell, x, y);
+                        if (mController.isMeasuring()) {
+                            TraceCompat.endSection();
+                        }
+                        mController.endMetrics(false);
+                        return false;
+                    }
+                }
+            }
+        }
+        return super.onInterceptTouchEvent(ev);
+    }
+
+    private boolean isDragEnabled() {
+        return mDragListener != null || mDropListener != null || getAdapter() instanceof ReorderableAdapter;
+    }
+
+    @Override
+    public void setRecyclerListener(RecyclerListener listener) {
+        mRecyclerListener = listener;
+    }
+
+    /*
+      * The cell geometry, retaken after a layout or when the grid has
+      * scrolled since. GridView only reports its column count from
+      * API 11 on, so the columns are counted off the first row.
+      */
+    private CellIndex getCells() {
+        int count = getChildCount();
+        int first = getFirstVisiblePosition();
+        int anchorTop = (count > 0) ? getChildAt(0).getTop() : 0;
+        if (mCells.isCurrent(first, count, anchorTop)) {
+            return mCells;
+        }
+
+        int columns = 1;
+        while (columns < count && getChildAt(columns).getTop() == anchorTop) {
+            columns++;
+        }
+        mCells.begin(first, count, columns);
+        for (int i = 0; i < columns && i < count; i++) {
+            mCells.setColumn(i, getChildAt(i).getLeft());
+        }
+        for (int start = 0, row = 0; start < count; start += columns, row++) {
+            int top = getChildAt(start).getTop();
+            int bottom = top;
+            for (int i = start; i < start + columns && i < count; i++) {
+                bottom = Math.max(bottom, getChildAt(i).getBottom());
+            }
+            if (start + columns < count) {
+                // the spacing below a row belongs to it
+                bottom = Math.max(bottom, getChildAt(start + columns).getTop());
+            }
+            mCells.setRow(row, top, bottom);
+        }
+        mCells.end();
+        return mCells;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        mCells.invalidate();
+    }
+
+    private void startDragging(int position, View cell, int x, int y) {
+        stopDragging();
+
+        mEngine.start(position, y, cell.getTop(), cell.getHeight(), getHeight());
+        mDragPointX = x - cell.getLeft();
+
+        cell.draw(mController.beginCapture(cell.getWidth(), cell.getHeight()));
+        mController.start(mController.endCapture());
+        mController.showShadow(null, cell.getLeft(), cell.getTop(), cell.getWidth(), cell.getHeight());
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (isDragEnabled() && mController.isDragging()) {
+            int action = ev.getAction();
+            switch (action) {
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    stopDragging();
+
+                    int from = mEngine.getFirstDragPosition();
+                    int to = mEngine.getDragPosition();
+                    if (action == MotionEvent.ACTION_CANCEL) {
+                        mController.reportMetrics(DragMetrics.OUTCOME_CANCEL);
+                        break;
+                    }
+                    mController.reportMetrics(DragMetrics.OUTCOME_DROP);
+                    if (to >= 0 && to < getCount()) {
+                        ListAdapter adapter = getAdapter();
+                        if (adapter instanceof ReorderableAdapter) {
+                            ((ReorderableAdapter) adapter).move(from, to);
+                        }
+                        if (mDropListener != null) {
+                            mDropListener.drop(from, to);
+                        }
+                    }
+                    break;
+
+                case MotionEvent.ACTION_DOWN:
+                case MotionEvent.ACTION_MOVE:
+                    int x = (int) ev.getX();
+                    int y = (int) ev.getY();
+                    mController.onMove(y, ev.getEventTime());
+                    moveShadow(x, y);
+                    updateDropTarget();
+                    mController.autoScroll();
+                    break;
+            }
+            return true;
+        }
+        return super.onTouchEvent(ev);
+    }
+
+    private void moveShadow(int x, int y) {
+        int width = mController.getShadowWidth();
+        int height = mController.getShadowHeight();
+        mController.moveShadow(Math.max(Math.min(x - mDragPointX, getWidth() - width), 0),
+                mEngine.getShadowTop(y, height));
+    }
+
+    /*
+      * The drop target is the slot under the center of the shadow.
+      */
+    private void updateDropTarget() {
+        int from = mEngine.getDragPosition();
+        int target = getCells().cellAt(mController.getShadowLeft() + mController.getShadowWidth() / 2,
+                mController.getShadowTop() + mController.getShadowHeight() / 2);
+        if (mEngine.moveTo(target, false)) {
+            mController.recordTargetId();
+            if (mDragListener != null) {
+                mDragListener.drag(from, target);
+            }
+            if (mController.isMeasuring()) {
+                mController.getMetrics().mExpansionPasses++;
+            }
+            mController.restartDisplacement();
+        }
+    }
+
+    /*
+      * What the DragController needs to know about a grid: it scrolls
+      * a row at a time, jumping there with setSelection() so the
+      * cells stay aligned to their slots and the cell index exact,
+      * and cells are displaced to the slot they make room towards.
+      */
+    private final class GridHost implements DragController.Host {
+        public void updateDropTarget() {
+            TouchGridView.this.updateDropTarget();
+        }
+
+        public int getScrollStep() {
+            return getCells().getRowPitch();
+        }
+
+        public boolean scrollBy(int distance) {
+            CellIndex cells = getCells();
+            int first = getFirstVisiblePosition();
+            int rows = distance / Math.max(cells.getRowPitch(), 1);
+            if (distance > 0) {
+                if (getLastVisiblePosition() >= getCount() - 1) {
+                    return false;
+                }
+                setSelection(Math.min(first + rows * cells.getColumns(), getCount() - 1));
+            } else {
+                if (first == 0) {
+                    return false;
+                }
+                setSelection(Math.max(0, first + rows * cells.getColumns()));
+            }
+            return true;
+        }
+
+        public boolean prefetch(float speed) {
+            return true;
+        }
+
+        public int getDisplacementPitch() {
+            return getCells().getRowPitch();
+        }
+
+        public int getDisplacementX(int position) {
+            int shift = mEngine.getShift(position);
+            if (shift == 0) {
+                return 0;
+            }
+            CellIndex cells = getCells();
+            return cells.getSlotLeft(position + shift) - cells.getSlotLeft(position);
+        }
+
+        public int getDisplacementY(int position) {
+            int shift = mEngine.getShift(position);
+            if (shift == 0) {
+                return 0;
+            }
+            CellIndex cells = getCells();
+            return cells.getSlotTop(position + shift) - cells.getSlotTop(position);
+        }
+
+        public boolean drawChild(Canvas canvas, View child, long drawingTime) {
+            return TouchGridView.super.drawChild(canvas, child, drawingTime);
+        }
+
+        public void cancelDrag() {
+            TouchGridView.this.cancelDrag();
+        }
+
+        public void onDataChanged(boolean invalidated) {
+        }
+
+        public void onDataLaidOut() {
+        }
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        return mController.drawChild(canvas, child, drawingTime);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        boolean displacing = mController.stepDisplacement();
+
+        super.dispatchDraw(canvas);
+
+        if (displacing) {
+            invalidate();
+        }
+        mController.drawShadow(canvas);
+    }
+
+    private void stopDragging() {
+        mController.stop();
+    }
+
+    private void cancelDrag() {
+        stopDragging();
+        mController.reportMetrics(DragMetrics.OUTCOME_CANCEL);
+    }
+
+    @Override
+    public void setAdapter(ListAdapter adapter) {
+        if (mController == null) {
+            // still inside the superclass constructor, ours registers it later
+            super.setAdapter(adapter);
+            return;
+        }
+        if (mController.isDragging()) {
+            cancelDrag();
+        }
+        super.setAdapter(adapter);
+        mController.setAdapter(adapter);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        mController.onDetached();
+    }
+
+    public void setDragListener(TouchListView.DragListener l) {
+        mDragListener = l;
+    }
+
+    public void setDropListener(TouchListView.DropListener l) {
+        mDropListener = l;
+    }
+
+    /*
+      * Receives a DragMetrics summary at the end of every drag
+      * gesture, as with TouchListView.
+      */
+    public void setDragMetricsListener(TouchListView.DragMetricsListener l) {
+        mController.setMetricsListener(l);
+    }
+}
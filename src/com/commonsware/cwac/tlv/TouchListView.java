@@ -17,53 +17,97 @@
 
 package com.commonsware.cwac.tlv;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
+import android.os.SystemClock;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.view.GestureDetector;
+import android.util.SparseBooleanArray;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.VelocityTracker;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.WindowManager;
-import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.Animation;
-import android.view.animation.AnimationUtils;
 import android.widget.*;
 
 public class TouchListView extends ListView {
-    private ImageView mDragView;
+    private View mDragView;     // mSnapshotView while a bitmap shadow is shown
+    private SnapshotView mSnapshotView;
     private FrameLayout mContentView;
     private FrameLayout.LayoutParams mWindowParams;
-    private int mDragPos;      // which item is being dragged
-    private int mFirstDragPos; // where was the dragged item originally
-    private int mDragPoint;    // at what offset inside the item did the user grab it
+    private DragEngine mEngine;
+    private DragController mController;
     //private int mCoordOffset;  // the difference between screen coordinates and coordinates in this view
     private DragListener mDragListener;
     private DropListener mDropListener;
+    private MultiDropListener mMultiDropListener;
     private RemoveListener mRemoveListener;
-    private int mUpperBound;
-    private int mLowerBound;
-    private int mHeight;
-    private GestureDetector mGestureDetector;
-    public static final int FLING = 0;
-    public static final int SLIDE_RIGHT = 1;
-    public static final int SLIDE_LEFT = 2;
+    private BatchRemoveListener mBatchRemoveListener;
+    private DragPrefetchListener mPrefetchListener;
+    private SwipeDismisser mSwipeDismisser;
+    public static final int SWIPE = DragEngine.REMOVE_SWIPE;
+    public static final int FLING = SWIPE;  // the name SWIPE had before rows were swiped directly
+    public static final int SLIDE_RIGHT = DragEngine.REMOVE_SLIDE_RIGHT;
+    public static final int SLIDE_LEFT = DragEngine.REMOVE_SLIDE_LEFT;
+    public static final int SHADOW_BITMAP = 0;
+    public static final int SHADOW_LIVE = 1;
+    public static final int DISPLACE_RESIZE = 0;
+    public static final int DISPLACE_TRANSLATE = 1;
+    private static final int FRAME_DELAY = DragController.FRAME_DELAY;
+    private static final int PREFETCH_FRAMES = 8;   // how far ahead auto-scroll predicts the visible rows
+    private static final int REMOVAL_DURATION = 150;
+    private static final int SWIPE_DURATION = 150;  // ms for a swiped row to slide its full width
+    private static final int SWIPE_VELOCITY_FACTOR = 16;  // times the minimum fling velocity
     private int mRemoveMode = -1;
+    private int mDragShadowMode = SHADOW_BITMAP;
+    private View mShadowView;   // row view bound by the adapter, drawn in dispatchDraw in SHADOW_LIVE mode
+    private int mShadowViewType = AdapterView.ITEM_VIEW_TYPE_IGNORE;
+    private boolean mIncrementalExpansion;
+    private boolean mMultiDrag;
+    private int[] mBlock = new int[0];  // checked positions, gathered at ACTION_DOWN
+    private final ArrayList<View> mBlockRows = new ArrayList<View>();
+    private final ArrayList<View> mBlockScratch = new ArrayList<View>();  // off-screen block rows, convertViews for the next grab
+    private int[] mBlockScratchTypes = new int[0];
+    private int mBlockScratchUsed;  // scratch views the current capture holds, at the front
+    private int[] mDropFrom = new int[0];  // a block drop's positions, reused while the block size holds
+    private int[] mDropMoves = new int[0];  // and the single moves it comes down to
+    private int mBlockOffset;   // top of the dragged row inside the block shadow
+    private int mBlockExtra;    // how much taller the block shadow is than the dragged row
+    private View mHiddenRow;    // row collapsed or hidden by the last doExpansion()
+    private View mExpandedRow;  // row opened up as the gap by the last doExpansion()
+    private View mExpansionLast;
+    private int mExpansionFirst = INVALID_POSITION;
+    private int mExpansionCount;
+    private int mDisplacementMode = DISPLACE_RESIZE;
+    private final RowCollapser mRowCollapser = new RowCollapser();
+    private final DropTargetUpdater mDropTargetUpdater = new DropTargetUpdater();
+    private final Scrubber mScrubber = new Scrubber();
+    private final RemovalQueue mRemovalQueue = new RemovalQueue();
+    private final IdentityHashMap<View, Integer> mCollapsedRows = new IdentityHashMap<View, Integer>(); // row -> height before
+    private int mRemovalUndoDelay;
+    private int mRemovalBatchSize;
+    private int mScrubRailWidth;
+    private boolean mCoalesceDragEvents;
+    private boolean mAnimateRemoval;
+    private final RowHeightIndex mHeightIndex = new RowHeightIndex();
+    private final ChildGeometry mChildGeometry = new ChildGeometry();
     private Rect mTempRect = new Rect();
-    private Bitmap mDragBitmap;
-    private final int mTouchSlop;
+    private RecyclerListener mRecyclerListener;
+    private final Rect mListBounds = new Rect();
     private int mItemHeightNormal = -1;
     private int mItemHeightExpanded = -1;
-    private int grabberId = -1;
-    private int dragndropBackgroundColor = 0x00000000;
 
     public TouchListView(Context context, AttributeSet attrs) {
         this(context, attrs, 0);
@@ -72,10 +116,26 @@ public class TouchListView extends ListView {
     public TouchListView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
 
-        View view = getRootView();
+        // rows going to the scrap heap get rebound, drop what we know about them
+        super.setRecyclerListener(new RecyclerListener() {
+            public void onMovedToScrapHeap(View view) {
+                mController.onRecycled(view);
+                mRowCollapser.onRecycled(view);
+                mSwipeDismisser.onRecycled(view);
+                restoreCollapsedRow(view);
+                if (mRecyclerListener != null) {
+                    mRecyclerListener.onMovedToScrapHeap(view);
+                }
+            }
+        });
 
+        View view = getRootView();
 
-        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+        int grabberId = -1;
+        int dragndropBackgroundColor = 0x00000000;
+        int scrollSpeed = -1;
+        Bitmap.Config dragBitmapConfig = Bitmap.Config.ARGB_8888;
+        float dragBitmapScale = 1.0f;
 
         if (attrs != null) {
             TypedArray a = getContext()
@@ -88,9 +148,47 @@ public class TouchListView extends ListView {
             grabberId = a.getResourceId(R.styleable.TouchListView_grabber, -1);
             dragndropBackgroundColor = a.getColor(R.styleable.TouchListView_dragndrop_background, 0x00000000);
             mRemoveMode = a.getInt(R.styleable.TouchListView_remove_mode, -1);
+            mAnimateRemoval = a.getBoolean(R.styleable.TouchListView_animate_removal, false);
+            mCoalesceDragEvents = a.getBoolean(R.styleable.TouchListView_coalesce_drag_events, false);
+            mIncrementalExpansion = a.getBoolean(R.styleable.TouchListView_incremental_expansion, false);
+            mMultiDrag = a.getBoolean(R.styleable.TouchListView_multi_drag, false);
+            mScrubRailWidth = a.getDimensionPixelSize(R.styleable.TouchListView_scrub_rail_width, 0);
+            mRemovalUndoDelay = a.getInt(R.styleable.TouchListView_removal_undo_delay, 0);
+            mRemovalBatchSize = a.getInt(R.styleable.TouchListView_removal_batch_size, 0);
+            mDragShadowMode = a.getInt(R.styleable.TouchListView_drag_shadow, SHADOW_BITMAP);
+            mDisplacementMode = a.getInt(R.styleable.TouchListView_displacement, DISPLACE_RESIZE);
+            scrollSpeed = a.getDimensionPixelSize(R.styleable.TouchListView_scroll_speed, -1);
+            if (a.getInt(R.styleable.TouchListView_drag_bitmap_format, 0) == 1) {
+                dragBitmapConfig = Bitmap.Config.RGB_565;
+            }
+            dragBitmapScale = a.getFloat(R.styleable.TouchListView_drag_bitmap_scale, 1.0f);
+            if (dragBitmapScale <= 0 || dragBitmapScale > 1) {
+                dragBitmapScale = 1.0f;
+            }
 
             a.recycle();
         }
+
+        mEngine = new DragEngine(ViewConfiguration.get(context).getScaledTouchSlop(),
+                mRemoveMode, mItemHeightNormal);
+        mController = new DragController(this, new ListHost(), mEngine, 3,
+                mDisplacementMode == DISPLACE_TRANSLATE);
+        mController.setGrabberId(grabberId);
+        mController.setShadowFormat(dragndropBackgroundColor, dragBitmapConfig, dragBitmapScale);
+        if (scrollSpeed >= 0) {
+            mController.setMaxScrollSpeed(scrollSpeed);
+        }
+
+        // everything a grab needs is created up front, so dragging doesn't allocate
+        mWindowParams = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT);
+        mWindowParams.gravity = Gravity.TOP | Gravity.LEFT;
+        mSnapshotView = new SnapshotView(context);
+        mSwipeDismisser = new SwipeDismisser(ViewConfiguration.get(context));
+
+        // an android:entries adapter was set before there was a controller to observe it
+        mController.setAdapter(getAdapter());
     }
 
     @Override
@@ -119,46 +217,20 @@ public class TouchListView extends ListView {
 
     @Override
     public boolean onInterceptTouchEvent(MotionEvent ev) {
-        if (mRemoveListener != null && mGestureDetector == null) {
-            if (mRemoveMode == FLING) {
-                mGestureDetector = new GestureDetector(getContext(), new SimpleOnGestureListener() {
-                    @Override
-                    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
-                                           float velocityY) {
-                        if (mDragView != null) {
-                            if (velocityX > 1000) {
-                                Rect r = mTempRect;
-                                mDragView.getDrawingRect(r);
-                                if (e2.getX() > r.right * 2 / 3) {
-                                    // fast fling right with release near the right edge of the screen
-                                    stopDragging();
-                                    mRemoveListener.remove(mFirstDragPos);
-                                    unExpandViews(true);
-                                }
-                            }
-                            // flinging while dragging should have no effect
-                            return true;
-                        }
-                        return false;
-                    }
-                });
-            }
-        }
-        if (mDragListener != null || mDropListener != null) {
+        if (isDragEnabled()) {
             switch (ev.getAction()) {
                 case MotionEvent.ACTION_DOWN:
                     int x = (int) ev.getX();
                     int y = (int) ev.getY();
-                    int itemnum = pointToPosition(x, y);
-                    if (itemnum == AdapterView.INVALID_POSITION) {
+                    int itemnum = getChildGeometry().rowAt(y);
+                    if (itemnum == AdapterView.INVALID_POSITION || x < 0 || x >= getWidth()) {
                         break;
                     }
 
                     View item = (View) getChildAt(itemnum - getFirstVisiblePosition());
 
-                    if (isDraggableRow(item)) {
-                        mDragPoint = y - item.getTop();
-                        View dragger = item.findViewById(grabberId);
+                    if (isDraggableRow(item) && !mRowCollapser.isRunning()) {
+                        View dragger = mController.getGrabber(item);
                         Rect r = mTempRect;
 //										dragger.getDrawingRect(r);
 
@@ -168,93 +240,215 @@ public class TouchListView extends ListView {
                         r.bottom = dragger.getBottom();
 
                         if ((r.left < x) && (x < r.right)) {
-                            item.setDrawingCacheEnabled(true);
-                            // Create a copy of the drawing cache so that it does not get recycled
-                            // by the framework when the list tries to clean up memory
-                            Bitmap bitmap = Bitmap.createBitmap(item.getDrawingCache());
-                            item.setDrawingCacheEnabled(false);
-
-                            Rect listBounds = new Rect();
-
-                            getGlobalVisibleRect(listBounds, null);
-
-                            startDragging(bitmap, listBounds.left, y);
-                            mDragPos = itemnum;
-                            mFirstDragPos = mDragPos;
-                            mHeight = getHeight();
-                            int touchSlop = mTouchSlop;
-                            mUpperBound = Math.min(y - touchSlop, mHeight / 3);
-                            mLowerBound = Math.max(y + touchSlop, mHeight * 2 / 3);
+                            if (mRemovalQueue.getCount() > 0) {
+                                if (mRemovalQueue.isPending(itemnum)) {
+                                    break;
+                                }
+                                // a drag must not see rows on their way out, so hand them over first
+                                itemnum -= mRemovalQueue.countBefore(itemnum);
+                                mRemovalQueue.flush();
+                                layoutChildren();
+                                item = getChildAt(itemnum - getFirstVisiblePosition());
+                                if (item == null) {
+                                    break;
+                                }
+                            }
+                            mController.beginMetrics(ev.getDownTime());
+                            if (mController.isMeasuring()) {
+                                TraceCompat.beginSection("TouchListView.startDragging");
+                            }
+                            int blockCount = getBlockPositions(itemnum);
+                            Bitmap bitmap = null;
+                            mBlockOffset = 0;
+                            mBlockExtra = 0;
+                            if (blockCount > 1) {
+                                // a block shadow is always a bitmap, there is no single row to bind
+                                bitmap = captureBlock(item, itemnum, blockCount);
+                            }
+                            mEngine.start(itemnum, y, item.getTop() - mBlockOffset,
+                                    item.getHeight() + mBlockExtra + getDividerHeight(), getHeight());
+                            if (blockCount > 1) {
+                                mEngine.setBlock(mBlock, blockCount);
+                            }
+
+                            if (bitmap == null && mDragShadowMode == SHADOW_LIVE) {
+                                startLiveDragging(itemnum, item, y);
+                            } else {
+                                if (bitmap == null) {
+                                    bitmap = captureRow(item);
+                                }
+
+                                getGlobalVisibleRect(mListBounds, null);
+
+                                startDragging(bitmap, mListBounds.left, y, item.getWidth(),
+                                        item.getHeight() + mBlockExtra);
+                            }
+                            if (mController.isMeasuring()) {
+                                TraceCompat.endSection();
+                            }
+                            mController.endMetrics(mDragView != null);
+                            if (mDisplacementMode == DISPLACE_TRANSLATE) {
+                                recordRowHeights();
+                            }
                             return false;
                         }
 
-                        mDragView = null;
+                        stopDragging();
                     }
 
                     break;
             }
         }
+        if (mSwipeDismisser.onInterceptTouchEvent(ev)) {
+            return true;
+        }
         return super.onInterceptTouchEvent(ev);
     }
 
+    private boolean isDragEnabled() {
+        return mDragListener != null || mDropListener != null || mMultiDropListener != null
+                || getReorderableAdapter() != null;
+    }
+
+    /*
+      * With multi_drag, grabbing a checked row drags all checked rows.
+      * Gathers their positions into mBlock and returns how many there
+      * are; 1 means a plain single row drag. Blocks are only moved
+      * with displacement="resize".
+      */
+    private int getBlockPositions(int position) {
+        if (!mMultiDrag || mDisplacementMode != DISPLACE_RESIZE) {
+            return 1;
+        }
+        SparseBooleanArray checked = getCheckedItemPositions();
+        if (checked == null || !checked.get(position)) {
+            return 1;
+        }
+
+        int size = checked.size();
+        if (mBlock.length < size) {
+            mBlock = new int[size];
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (checked.valueAt(i) && checked.keyAt(i) < getCount()) {
+                mBlock[count++] = checked.keyAt(i);  // keys come out sorted
+            }
+        }
+        return count;
+    }
+
+    /*
+      * The list's adapter if it can apply drops and removals itself,
+      * looking through the wrapper ListView puts around it when
+      * footers are used.
+      */
+    private ReorderableAdapter getReorderableAdapter() {
+        ListAdapter adapter = getAdapter();
+        if (adapter instanceof HeaderViewListAdapter) {
+            adapter = ((HeaderViewListAdapter) adapter).getWrappedAdapter();
+        }
+        return (adapter instanceof ReorderableAdapter) ? (ReorderableAdapter) adapter : null;
+    }
+
     protected boolean isDraggableRow(View view) {
-        return (view.findViewById(grabberId) != null);
+        return (mController.getGrabber(view) != null);
+    }
+
+    @Override
+    public void setRecyclerListener(RecyclerListener listener) {
+        mRecyclerListener = listener;
     }
 
     /*
       * pointToPosition() doesn't consider invisible views, but we
-      * need to, so implement a slightly different version.
+      * need to, so hit-test against a snapshot of the child rows
+      * instead. It is retaken after a layout, or when the list has
+      * scrolled since.
       */
-    private int myPointToPosition(int x, int y) {
-        Rect frame = mTempRect;
-        final int count = getChildCount();
-        for (int i = count - 1; i >= 0; i--) {
-            final View child = getChildAt(i);
-            child.getHitRect(frame);
-            if (frame.contains(x, y)) {
-                return getFirstVisiblePosition() + i;
+    private ChildGeometry getChildGeometry() {
+        int count = getChildCount();
+        int first = getFirstVisiblePosition();
+        int anchorTop = (count > 0) ? getChildAt(0).getTop() : 0;
+        if (!mChildGeometry.isCurrent(first, count, anchorTop)) {
+            mChildGeometry.begin(first, count);
+            for (int i = 0; i < count; i++) {
+                View child = getChildAt(i);
+                int bottom = (i + 1 < count) ? getChildAt(i + 1).getTop() : child.getBottom();
+                mChildGeometry.set(i, child.getTop(), Math.max(bottom, child.getBottom()));
             }
+            mChildGeometry.end();
         }
-        return INVALID_POSITION;
+        return mChildGeometry;
     }
 
     private int getItemForPosition(int y) {
-        int adjustedy = y - mDragPoint - (mItemHeightNormal / 2);
-        int pos = myPointToPosition(0, adjustedy);
-        if (pos >= 0) {
-            if (pos <= mFirstDragPos) {
-                pos += 1;
-            }
-        } else if (adjustedy < 0) {
-            pos = 0;
+        if (mDisplacementMode != DISPLACE_TRANSLATE) {
+            return mEngine.getTarget(y, getChildGeometry());
+        }
+
+        // rows keep their own heights in this mode, so the target is
+        // looked up in the height index; this also works past the
+        // visible rows
+        View anchor = getChildAt(0);
+        if (anchor == null || mHeightIndex.size() != getCount()) {
+            return INVALID_POSITION;
+        }
+        return mEngine.getTranslatedTarget(y, mHeightIndex, getFirstVisiblePosition(), anchor.getTop());
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        // AbsListView calls this once a scroll has attached the rows coming into view
+        applyPendingRemovals();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        mChildGeometry.invalidate();
+
+        if (applyPendingRemovals()) {
+            super.layoutChildren();
+        }
+        if (mDisplacementMode == DISPLACE_TRANSLATE) {
+            recordRowHeights();
         }
-        return pos;
     }
 
-    private void adjustScrollBounds(int y) {
-        if (y >= mHeight / 3) {
-            mUpperBound = mHeight / 3;
+    /*
+      * Feed the measured heights of the attached rows into the
+      * height index, (re)sizing it if the adapter count changed.
+      */
+    private void recordRowHeights() {
+        int count = getCount();
+        int divider = getDividerHeight();
+        if (mHeightIndex.size() != count) {
+            mHeightIndex.reset(count, Math.max(mItemHeightNormal, 1) + divider);
         }
-        if (y <= mHeight * 2 / 3) {
-            mLowerBound = mHeight * 2 / 3;
+
+        int first = getFirstVisiblePosition();
+        int children = getChildCount();
+        for (int i = 0; i < children && first + i < count; i++) {
+            mHeightIndex.set(first + i, getChildAt(i).getHeight() + divider);
         }
     }
 
     /*
       * Restore size and visibility for all listitems
       */
-    private void unExpandViews(boolean deletion) {
+    private void unExpandViews() {
+        if (mDisplacementMode == DISPLACE_TRANSLATE) {
+            // row sizes were never touched, the adapter change lays us out
+            mController.clearOffsets();
+            invalidate();
+            return;
+        }
+
         for (int i = 0; ; i++) {
             View v = getChildAt(i);
             if (v == null) {
-                if (deletion) {
-                    // HACK force update of mItemCount
-                    int position = getFirstVisiblePosition();
-                    int y = getChildAt(0).getTop();
-                    setAdapter(getAdapter());
-                    setSelectionFromTop(position, y);
-                    // end hack
-                }
                 layoutChildren(); // force children to be recreated where needed
                 v = getChildAt(i);
                 if (v == null) {
@@ -262,237 +456,1580 @@ public class TouchListView extends ListView {
                 }
             }
 
-            if (isDraggableRow(v)) {
-                ViewGroup.LayoutParams params = v.getLayoutParams();
-                params.height = mItemHeightNormal;
-                v.setLayoutParams(params);
-                makeRowVisible(v);
+            applyRowState(v, mItemHeightNormal, View.VISIBLE);
+        }
+        resetExpansionState();
+    }
+
+    /*
+      * The RemoveListener (or ReorderableAdapter) changes the data and
+      * the adapter's notifyDataSetChanged() lets the list rebind just
+      * what it needs through its recycler. With animate_removal, the
+      * removed row first shrinks away.
+      */
+    private void removeRow(int which) {
+        if (mAnimateRemoval) {
+            View row = getChildAt(which - getFirstVisiblePosition());
+            if (row != null && isDraggableRow(row)) {
+                mRowCollapser.start(row, which);
+                return;
             }
         }
+        finishRemoval(which);
     }
 
-    private void makeRowVisible(View v){
-        v.setVisibility(View.VISIBLE);
+    private void finishRemoval(int which) {
+        if (mRemovalUndoDelay > 0) {
+            mRemovalQueue.add(which);
+            unExpandViews();
+            requestLayout();
+            return;
+        }
+
+        ReorderableAdapter adapter = getReorderableAdapter();
+        if (adapter != null) {
+            adapter.remove(which);
+        }
+        if (mRemoveListener != null) {
+            mRemoveListener.remove(which);
+        }
+        if (mController.isMeasuring()) {
+            TraceCompat.beginSection("TouchListView.removal");
+        }
+        unExpandViews();
+        if (mController.isMeasuring()) {
+            TraceCompat.endSection();
+        }
     }
 
-    /* Adjust visibility and size to make it appear as though
-      * an item is being dragged around and other items are making
-      * room for it:
-      * If dropping the item would result in it still being in the
-      * same place, then make the dragged listitem's size normal,
-      * but make the item invisible.
-      * Otherwise, if the dragged listitem is still on screen, make
-      * it as small as possible and expand the item below the insert
-      * point.
-      * If the dragged item is not on screen, only expand the item
-      * below the current insertpoint.
+    /*
+      * Collapse the attached rows whose removal is pending and give
+      * rows that were collapsed for a removal, but no longer show a
+      * pending position (undone, handed over, or rebound), their old
+      * height back. Returns true if any row changed. Runs after each
+      * layout and, as rows attached by scrolling skip layoutChildren(),
+      * after each scroll.
       */
-    private void doExpansion() {
-        //drag position after taking into account the list may be scrolled
-        int actualDragPos = mDragPos - getFirstVisiblePosition();
+    private boolean applyPendingRemovals() {
+        if (mRemovalQueue.getCount() == 0 && mCollapsedRows.isEmpty()) {
+            return false;
+        }
 
-        if (mDragPos > mFirstDragPos) {
-            actualDragPos++; //wtf?
+        boolean changed = false;
+        int first = getFirstVisiblePosition();
+        int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            View row = getChildAt(i);
+            ViewGroup.LayoutParams params = row.getLayoutParams();
+            Integer height = mCollapsedRows.get(row);
+            if (mRemovalQueue.isPending(first + i)) {
+                if (height == null) {
+                    mCollapsedRows.put(row, params.height);
+                }
+                if (params.height != 1 || row.getVisibility() != View.INVISIBLE) {
+                    params.height = 1;
+                    row.setLayoutParams(params);
+                    row.setVisibility(View.INVISIBLE);
+                    changed = true;
+                }
+            } else if (height != null) {
+                mCollapsedRows.remove(row);
+                params.height = height;
+                row.setLayoutParams(params);
+                row.setVisibility(View.VISIBLE);
+                changed = true;
+            }
         }
+        return changed;
+    }
 
-        int firstDragPosIndexWithOffset = mFirstDragPos - getFirstVisiblePosition();
-        View firstDragPosWithOffset = getChildAt(firstDragPosIndexWithOffset);  //may be null if off screen
+    /*
+      * A row collapsed for a pending removal is going to the scrap
+      * heap, to be rebound to another position: give it its height and
+      * visibility back. The list may reuse it without measuring it
+      * again, unless told to.
+      */
+    private void restoreCollapsedRow(View row) {
+        Integer height = mCollapsedRows.remove(row);
+        if (height != null) {
+            row.getLayoutParams().height = height;
+            row.forceLayout();
+            row.setVisibility(View.VISIBLE);
+        }
+    }
 
-        //loop through all visible list views so we can hide appropriate rows
-        for (int i = 0; ; i++) {
-            View loopChild = getChildAt(i);
-            if (loopChild == null) {
-                break;
-            }
+    /*
+      * removal_undo_delay: a removed row is only collapsed at first and
+      * its position collected here. The removals are handed over in one
+      * go removal_undo_delay ms after the last one, as soon as
+      * removal_batch_size are waiting, or before anything could shift
+      * positions under them (a new drag, a new adapter, detaching):
+      * to BatchReorderableAdapter and BatchRemoveListener where they
+      * are implemented, otherwise one by one from the bottom up, and
+      * followed by a single relayout. Until then undoRemovals() brings
+      * the rows back.
+      */
+    private final class RemovalQueue implements Runnable {
+        private int[] mPositions = new int[8];  // ascending
+        private long[] mIds = new long[8];
+        private int mCount;
+
+        int getCount() {
+            return mCount;
+        }
 
-            //by default we will set this to be normal height and vis
-            int height = mItemHeightNormal;
-            int visibility = View.VISIBLE;
+        boolean isPending(int position) {
+            int index = countBefore(position);
+            return index < mCount && mPositions[index] == position;
+        }
 
-            //check if loop child is where the drag started
-            if (loopChild.equals(firstDragPosWithOffset)) {
-                // as yes check if the current drag is over the drag start position
-                if (mDragPos == mFirstDragPos) {
-                    // hovering over the original location
-                    visibility = View.INVISIBLE;
+        /*
+          * Number of pending positions before position.
+          */
+        int countBefore(int position) {
+            int low = 0;
+            int high = mCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mPositions[mid] < position) {
+                    low = mid + 1;
                 } else {
-                    // not hovering over it
-                    height = 1; //TODO why 1?
+                    high = mid;
                 }
-            } else if (i == actualDragPos) { //this is the current drag position
+            }
+            return low;
+        }
 
-                if (mDragPos < getCount() - 1) {
-                    height = mItemHeightExpanded;
+        void add(int position) {
+            int index = countBefore(position);
+            if (index == mCount || mPositions[index] != position) {
+                if (mCount == mPositions.length) {
+                    int[] positions = new int[mCount * 2];
+                    long[] ids = new long[mCount * 2];
+                    System.arraycopy(mPositions, 0, positions, 0, mCount);
+                    System.arraycopy(mIds, 0, ids, 0, mCount);
+                    mPositions = positions;
+                    mIds = ids;
                 }
+                System.arraycopy(mPositions, index, mPositions, index + 1, mCount - index);
+                System.arraycopy(mIds, index, mIds, index + 1, mCount - index);
+                ListAdapter adapter = getAdapter();
+                mPositions[index] = position;
+                mIds[index] = adapter.hasStableIds() ? adapter.getItemId(position) : INVALID_ROW_ID;
+                mCount++;
             }
 
-            if (isDraggableRow(loopChild)) {
-                ViewGroup.LayoutParams params = loopChild.getLayoutParams();
-                params.height = height;
-                loopChild.setLayoutParams(params);
+            removeCallbacks(this);
+            if (mRemovalBatchSize > 0 && mCount >= mRemovalBatchSize) {
+                flush();
+            } else {
+                postDelayed(this, mRemovalUndoDelay);
+            }
+        }
+
+        boolean undo() {
+            removeCallbacks(this);
+            if (mCount == 0) {
+                return false;
+            }
+            mCount = 0;
+            requestLayout();
+            return true;
+        }
+
+        void flush() {
+            removeCallbacks(this);
+            if (mCount == 0) {
+                return;
+            }
 
-                if(loopChild.getVisibility() == View.INVISIBLE && visibility == View.VISIBLE){
-                    makeRowVisible(loopChild);
-                }else{
-                    loopChild.setVisibility(visibility);
+            int[] which = new int[mCount];
+            System.arraycopy(mPositions, 0, which, 0, mCount);
+            mCount = 0;
+
+            if (mController.isMeasuring()) {
+                TraceCompat.beginSection("TouchListView.removal");
+            }
+            ReorderableAdapter adapter = getReorderableAdapter();
+            if (adapter instanceof BatchReorderableAdapter) {
+                ((BatchReorderableAdapter) adapter).remove(which);
+            } else if (adapter != null) {
+                for (int i = which.length - 1; i >= 0; i--) {
+                    adapter.remove(which[i]);
+                }
+            }
+            if (mBatchRemoveListener != null) {
+                mBatchRemoveListener.remove(which);
+            } else if (mRemoveListener != null) {
+                for (int i = which.length - 1; i >= 0; i--) {
+                    mRemoveListener.remove(which[i]);
+                }
+            }
+            unExpandViews();
+            if (mController.isMeasuring()) {
+                TraceCompat.endSection();
+            }
+        }
+
+        /*
+          * The data changed under the queue. With stable ids the rows
+          * are followed to their new positions (those gone from the
+          * adapter are dropped); without them the removals are undone,
+          * rather than risk removing the wrong rows.
+          */
+        void remap() {
+            ListAdapter adapter = getAdapter();
+            if (mCount == 0 || adapter == null) {
+                return;
+            }
+            if (!adapter.hasStableIds()) {
+                undo();
+                return;
+            }
+
+            int count = adapter.getCount();
+            int kept = 0;
+            for (int i = 0; i < mCount; i++) {
+                int position = DragController.findPosition(adapter, mIds[i], mPositions[i], count);
+                if (position < 0) {
+                    continue;
                 }
 
+                // keep ascending order, the queue is short; the shift may overwrite slot i
+                long id = mIds[i];
+                int j = kept;
+                while (j > 0 && mPositions[j - 1] > position) {
+                    mPositions[j] = mPositions[j - 1];
+                    mIds[j] = mIds[j - 1];
+                    j--;
+                }
+                mPositions[j] = position;
+                mIds[j] = id;
+                kept++;
+            }
+            mCount = kept;
+            if (mCount == 0) {
+                removeCallbacks(this);
             }
         }
-        // Request re-layout since we changed the items layout
-        // and not doing this would cause bogus hitbox calculation
-        // in myPointToPosition
-        layoutChildren();
+
+        public void run() {
+            flush();
+        }
     }
 
-    @Override
-    public boolean onTouchEvent(MotionEvent ev) {
-        if (mGestureDetector != null) {
-            mGestureDetector.onTouchEvent(ev);
+    /*
+      * animate_removal: shrinks the removed row away, then removes it.
+      * The row view is only borrowed: if the recycler takes it back,
+      * e.g. after a fling, or the data changes underneath, the row is
+      * handed back in its original state at once and the removal
+      * follows on the next frame, at the position the row has by then
+      * (see findRow()). If that can't be told, the removal is dropped.
+      */
+    private final class RowCollapser implements Runnable {
+        private View mRow;
+        private int mPosition;
+        private long mId;
+        private boolean mFinishing;  // the row was let go early, the removal is posted
+        private int mStartHeight;
+        private int mOriginalHeight;
+        private long mStartTime;
+
+        boolean isRunning() {
+            return mRow != null || mFinishing;
         }
-        if ((mDragListener != null || mDropListener != null) && mDragView != null) {
-            int action = ev.getAction();
-            switch (action) {
-                case MotionEvent.ACTION_UP:
-                case MotionEvent.ACTION_CANCEL:
-                    Rect r = mTempRect;
-                    mDragView.getDrawingRect(r);
-                    stopDragging();
 
-                    if (mRemoveMode == SLIDE_RIGHT && ev.getX() > r.left + (r.width() * 3 / 4)) {
-                        if (mRemoveListener != null) {
-                            mRemoveListener.remove(mFirstDragPos);
-                        }
-                        unExpandViews(true);
-                    } else if (mRemoveMode == SLIDE_LEFT && ev.getX() < r.left + (r.width() / 4)) {
-                        if (mRemoveListener != null) {
-                            mRemoveListener.remove(mFirstDragPos);
-                        }
-                        unExpandViews(true);
-                    } else {
-                        if (mDropListener != null && mDragPos >= 0 && mDragPos < getCount()) {
-                            mDropListener.drop(mFirstDragPos, mDragPos);
-                        }
-                        unExpandViews(false);
-                    }
-                    break;
+        void start(View row, int position) {
+            mRow = row;
+            mPosition = position;
+            mId = getStableId(position);
+            mFinishing = false;
+            mStartHeight = row.getHeight();
+            mOriginalHeight = row.getLayoutParams().height;
+            mStartTime = SystemClock.uptimeMillis();
+            row.setVisibility(View.INVISIBLE);
+            post(this);
+        }
 
-                case MotionEvent.ACTION_DOWN:
-                case MotionEvent.ACTION_MOVE:
-                    int x = (int) ev.getX();
-                    int y = (int) ev.getY();
-                    dragView(x, y);
-                    int itemnum = getItemForPosition(y);
-                    if (itemnum >= 0) {
-                        if (action == MotionEvent.ACTION_DOWN || itemnum != mDragPos) {
-                            if (mDragListener != null) {
-                                mDragListener.drag(mDragPos, itemnum);
-                            }
-                            mDragPos = itemnum;
+        public void run() {
+            if (mFinishing) {
+                mFinishing = false;
+                finishRemoval(mPosition);
+                return;
+            }
 
-                            //dont do expansion onDown - this will be done when the dragView is drawn for the first
-                            //time to avoid flicker
-                            //if(action != MotionEvent.ACTION_DOWN){
-                                doExpansion();
-                            //}
-                        }
-                        int speed = 0;
-                        adjustScrollBounds(y);
-                        if (y > mLowerBound) {
-                            // scroll the list up a bit
-                            speed = y > (mHeight + mLowerBound) / 2 ? 16 : 4;
-                        } else if (y < mUpperBound) {
-                            // scroll the list down a bit
-                            speed = y < mUpperBound / 2 ? -16 : -4;
-                        }
-                        if (speed != 0) {
-                            int ref = pointToPosition(0, mHeight / 2);
-                            if (ref == AdapterView.INVALID_POSITION) {
-                                //we hit a divider or an invisible view, check somewhere else
-                                ref = pointToPosition(0, mHeight / 2 + getDividerHeight() + 64);
-                            }
-                            View v = getChildAt(ref - getFirstVisiblePosition());
-                            if (v != null) {
-                                int pos = v.getTop();
-                                setSelectionFromTop(ref, pos - speed);
-                            }
-                        }
-                    }
-                    break;
+            float fraction = Math.min(1f, (SystemClock.uptimeMillis() - mStartTime) / (float) REMOVAL_DURATION);
+            if (fraction < 1f) {
+                ViewGroup.LayoutParams params = mRow.getLayoutParams();
+                params.height = Math.max(1, (int) (mStartHeight * (1f - fraction)));
+                mRow.setLayoutParams(params);
+                postDelayed(this, FRAME_DELAY);
+                return;
             }
-            return true;
+
+            // the data change rebinds the row
+            releaseRow();
+            finishRemoval(mPosition);
         }
-        return super.onTouchEvent(ev);
-    }
 
-    private void startDragging(Bitmap bm, int x, int y) {
-        Log.d("cwac", "x:"+x+" y:"+y);
-        stopDragging();
+        void onRecycled(View view) {
+            if (view == mRow) {
+                finishLater(mPosition);
+            }
+        }
 
-        if(mContentView == null)
-            mContentView = (FrameLayout) getRootView().findViewById(android.R.id.content);
+        void onDataChanged() {
+            if (!isRunning()) {
+                return;
+            }
+            int position = findRow(mId, mPosition);
+            if (position == INVALID_POSITION) {
+                cancel();
+            } else {
+                finishLater(position);
+            }
+        }
 
-        mWindowParams = new FrameLayout.LayoutParams(
-                ViewGroup.LayoutParams.WRAP_CONTENT,
-                ViewGroup.LayoutParams.WRAP_CONTENT);
-        mWindowParams.gravity = Gravity.TOP | Gravity.LEFT;
-        mWindowParams.leftMargin = x;
-        mWindowParams.topMargin = y - mDragPoint;
+        void cancel() {
+            removeCallbacks(this);
+            releaseRow();
+            mFinishing = false;
+        }
 
-        Log.d("cwac","topMargin:"+mWindowParams.topMargin+" left:"+mWindowParams.leftMargin);
+        private void finishLater(int position) {
+            removeCallbacks(this);
+            releaseRow();
+            mPosition = position;
+            mFinishing = true;
+            post(this);
+        }
 
-        ImageView v = new ImageView(getContext());
+        /*
+          * Hand the row back in its original state.
+          */
+        private void releaseRow() {
+            if (mRow == null) {
+                return;
+            }
+            ViewGroup.LayoutParams params = mRow.getLayoutParams();
+            params.height = mOriginalHeight;
+            mRow.setLayoutParams(params);
+            mRow.setVisibility(View.VISIBLE);
+            mRow = null;
+        }
+    }
 
-        v.setBackgroundColor(dragndropBackgroundColor);
-        v.setImageBitmap(bm);
-        mDragBitmap = bm;
+    /*
+      * remove_mode="swipe": a row dragged sideways anywhere, not just
+      * by its grabber, follows the finger. Let go past half its width
+      * or fling it sideways fast enough, and it slides out, collapses
+      * through RowCollapser and is removed; otherwise it slides back.
+      * Only the swiped row is drawn offset, in drawChild(), so nothing
+      * is laid out until it collapses.
+      */
+    private final class SwipeDismisser implements Runnable {
+        private final int mTouchSlop;
+        private final float mMinVelocity;
+        private final float mMaxVelocity;
+        private VelocityTracker mTracker;
+        private View mRow;
+        private int mPosition;
+        private long mId;
+        private float mDownX;
+        private float mDownY;
+        private boolean mSwiping;
+        private boolean mAnimating;
+        private int mOffset;
+        private int mTarget;
+        private long mLastTime;
 
-        mContentView.addView(v, mWindowParams);
-        mDragView = v;
-    }
+        SwipeDismisser(ViewConfiguration configuration) {
+            mTouchSlop = configuration.getScaledTouchSlop();
+            mMinVelocity = configuration.getScaledMinimumFlingVelocity() * SWIPE_VELOCITY_FACTOR;
+            mMaxVelocity = configuration.getScaledMaximumFlingVelocity();
+        }
 
-    private void dragView(int x, int y) {
-        //at a minimum this should not go below listView height - bitmap height
-        int reqDrawPosition = y - mDragPoint;
-        int lowestDrawPosition = getHeight() - mDragBitmap.getHeight();
-        mWindowParams.topMargin = Math.max(Math.min(reqDrawPosition, lowestDrawPosition), 0);
-        //Log.d("cwac","drag/topMargin:"+mWindowParams.topMargin+" left:"+mWindowParams.leftMargin+" lowest:"+lowestDrawPosition+" req:"+reqDrawPosition);
-        mContentView.updateViewLayout(mDragView, mWindowParams);
-    }
+        int getOffset(View child) {
+            return (child == mRow) ? mOffset : 0;
+        }
 
-    private void stopDragging() {
-        if (mDragView != null) {
-            mContentView.removeView(mDragView);
-            mDragView.setImageDrawable(null);
-            mDragView = null;
+        /*
+          * Sees every event first, as long as a row consumes the
+          * gesture. Returns true once a swipe takes it over.
+          */
+        boolean onInterceptTouchEvent(MotionEvent ev) {
+            switch (ev.getAction()) {
+                case MotionEvent.ACTION_DOWN:
+                    begin(ev);
+                    return false;
+
+                case MotionEvent.ACTION_MOVE:
+                    return track(ev);
+
+                default:
+                    stopTracking();
+                    return false;
+            }
         }
-        if (mDragBitmap != null) {
-            mDragBitmap.recycle();
-            mDragBitmap = null;
+
+        /*
+          * Sees the events after ACTION_DOWN once the list handles the
+          * gesture. Returns true for the events that belong to a swipe.
+          */
+        boolean onTouchEvent(MotionEvent ev) {
+            if (mTracker == null) {
+                return false;
+            }
+
+            switch (ev.getAction()) {
+                case MotionEvent.ACTION_MOVE:
+                    return track(ev);
+
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    boolean swiping = mSwiping;
+                    if (swiping) {
+                        release(ev);
+                    }
+                    stopTracking();
+                    return swiping;
+            }
+            return false;
         }
-    }
 
-    public void setDragListener(DragListener l) {
-        mDragListener = l;
-    }
+        private void begin(MotionEvent ev) {
+            stopTracking();
+            if (mRemoveMode != SWIPE || mAnimating || mController.isDragging() || mRowCollapser.isRunning()
+                    || (mRemoveListener == null && mBatchRemoveListener == null
+                            && getReorderableAdapter() == null)) {
+                return;
+            }
 
-    public void setDropListener(DropListener l) {
-        mDropListener = l;
-    }
+            int position = getChildGeometry().rowAt((int) ev.getY());
+            if (position == INVALID_POSITION
+                    || getAdapter().getItemViewType(position) == ITEM_VIEW_TYPE_HEADER_OR_FOOTER) {
+                return;
+            }
 
-    public void setRemoveListener(RemoveListener l) {
-        mRemoveListener = l;
-    }
+            mRow = getChildAt(position - getFirstVisiblePosition());
+            mPosition = position;
+            mId = getStableId(position);
+            mDownX = ev.getX();
+            mDownY = ev.getY();
+            mTracker = VelocityTracker.obtain();
+            mTracker.addMovement(ev);
+        }
 
-    public interface DragListener {
-        void drag(int from, int to);
-    }
+        private boolean track(MotionEvent ev) {
+            if (mTracker == null) {
+                return false;
+            }
+            mTracker.addMovement(ev);
 
-    public interface DropListener {
-        void drop(int from, int to);
-    }
+            float dx = ev.getX() - mDownX;
+            if (!mSwiping) {
+                float dy = Math.abs(ev.getY() - mDownY);
+                if (dy > mTouchSlop && dy >= Math.abs(dx)) {
+                    // a vertical gesture, leave it to the list
+                    stopTracking();
+                    return false;
+                }
+                if (Math.abs(dx) <= mTouchSlop || Math.abs(dx) <= dy) {
+                    return false;
+                }
 
-    public interface RemoveListener {
-        void remove(int which);
+                mSwiping = true;
+                getParent().requestDisallowInterceptTouchEvent(true);
+                // the row follows the finger from here on, as a live shadow would
+                mController.beginMetrics(ev.getDownTime());
+                mController.endMetrics(true);
+
+                // the list may have taken the down event for a press or a scroll
+                MotionEvent cancel = MotionEvent.obtain(ev);
+                cancel.setAction(MotionEvent.ACTION_CANCEL);
+                TouchListView.super.onTouchEvent(cancel);
+                cancel.recycle();
+            }
+
+            if (mController.isMeasuring()) {
+                mController.getMetrics().moved(ev.getEventTime());
+            }
+            mOffset = (int) dx;
+            invalidateRow();
+            return true;
+        }
+
+        private void release(MotionEvent ev) {
+            boolean dismiss = false;
+            if (ev.getAction() == MotionEvent.ACTION_UP) {
+                mTracker.addMovement(ev);
+                mTracker.computeCurrentVelocity(1000, mMaxVelocity);
+                dismiss = DragEngine.isSwipeDismiss(mOffset, mTracker.getXVelocity(),
+                        mTracker.getYVelocity(), mRow.getWidth(), mMinVelocity);
+            }
+
+            mController.reportMetrics(dismiss ? DragMetrics.OUTCOME_FLING_REMOVE : DragMetrics.OUTCOME_CANCEL);
+
+            int width = mRow.getWidth();
+            mTarget = dismiss ? (mOffset > 0 ? width : -width) : 0;
+            mAnimating = true;
+            mLastTime = SystemClock.uptimeMillis();
+            post(this);
+        }
+
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            int step = Math.max(1, (int) (mRow.getWidth() * (now - mLastTime) / SWIPE_DURATION));
+            mLastTime = now;
+
+            if (mOffset < mTarget) {
+                mOffset = Math.min(mOffset + step, mTarget);
+            } else {
+                mOffset = Math.max(mOffset - step, mTarget);
+            }
+            invalidateRow();
+            if (mOffset != mTarget) {
+                postDelayed(this, FRAME_DELAY);
+                return;
+            }
+
+            View row = mRow;
+            boolean dismiss = (mTarget != 0);
+            reset();
+            if (dismiss) {
+                // invisible from here on, so it can drop its offset
+                mRowCollapser.start(row, mPosition);
+            }
+        }
+
+        /*
+          * The swiped row went to the scrap heap mid-animation, e.g.
+          * because the data changed. Finish without it.
+          */
+        void onRecycled(View view) {
+            if (view != mRow) {
+                return;
+            }
+            boolean dismiss = mAnimating && mTarget != 0;
+            cancel();
+            if (dismiss) {
+                finishRemoval(mPosition);
+            }
+        }
+
+        /*
+          * Rows may have moved under the swiped one; follow it by its
+          * stable id, or give up on it without stable ids to go by.
+          */
+        void onDataChanged() {
+            if (mRow == null) {
+                return;
+            }
+            int position = findRow(mId, mPosition);
+            if (position == INVALID_POSITION) {
+                cancel();
+            } else {
+                mPosition = position;
+            }
+        }
+
+        void cancel() {
+            if (mSwiping) {
+                // taken away mid-gesture, before release() could report it
+                mController.reportMetrics(DragMetrics.OUTCOME_CANCEL);
+            }
+            removeCallbacks(this);
+            stopTracking();
+            reset();
+        }
+
+        private void stopTracking() {
+            if (mTracker != null) {
+                mTracker.recycle();
+                mTracker = null;
+            }
+            mSwiping = false;
+            if (!mAnimating && mRow != null) {
+                if (mOffset != 0) {
+                    mOffset = 0;
+                    invalidateRow();
+                }
+                mRow = null;
+            }
+        }
+
+        private void reset() {
+            mAnimating = false;
+            mRow = null;
+            mOffset = 0;
+        }
+
+        private void invalidateRow() {
+            invalidate(0, mRow.getTop(), getWidth(), mRow.getBottom());
+        }
+    }
+
+    private void makeRowVisible(View v){
+        v.setVisibility(View.VISIBLE);
+    }
+
+    /* Adjust visibility and size to make it appear as though
+      * an item is being dragged around and other items are making
+      * room for it:
+      * If dropping the item would result in it still being in the
+      * same place, then make the dragged listitem's size normal,
+      * but make the item invisible.
+      * Otherwise, if the dragged listitem is still on screen, make
+      * it as small as possible and expand the item below the insert
+      * point.
+      * If the dragged item is not on screen, only expand the item
+      * below the current insertpoint.
+      */
+    private void doExpansion() {
+        int first = getFirstVisiblePosition();
+
+        int count = getChildCount();
+        View hidden = getChildAt(mEngine.getHiddenChildIndex(first));  //may be null if off screen
+        int gapIndex = mEngine.getGapChildIndex(first);
+        if (mEngine.isBlock() && !mEngine.isOverOrigin()) {
+            // the other block rows are collapsed, open up the next row that isn't
+            while (gapIndex >= 0 && gapIndex < count && mEngine.isInBlock(first + gapIndex)) {
+                gapIndex++;
+            }
+        }
+        View gap = getChildAt(gapIndex);
+        if (gap == hidden || mEngine.getDragPosition() >= getCount() - 1) {
+            gap = null;
+        }
+
+        if (mIncrementalExpansion && first == mExpansionFirst && count == mExpansionCount
+                && getChildAt(count - 1) == mExpansionLast) {
+            // same rows as last pass: only the rows whose state changed need touching
+            if (mExpandedRow != null && mExpandedRow != gap && mExpandedRow != hidden) {
+                applyRowState(mExpandedRow, mItemHeightNormal, View.VISIBLE);
+            }
+            if (mHiddenRow != null && mHiddenRow != gap && mHiddenRow != hidden) {
+                applyRowState(mHiddenRow, mItemHeightNormal, View.VISIBLE);
+            }
+        } else {
+            //loop through all visible list views so we can reset the ones not involved
+            for (int i = 0; i < count; i++) {
+                View loopChild = getChildAt(i);
+                if (loopChild != hidden && loopChild != gap) {
+                    boolean moving = mEngine.isBlock() && mEngine.isInBlock(first + i);
+                    applyRowState(loopChild, moving ? 1 : mItemHeightNormal, View.VISIBLE);
+                }
+            }
+        }
+
+        if (hidden != null) {
+            if (mEngine.isOverOrigin()) {
+                // hovering over the original location
+                applyRowState(hidden, mItemHeightNormal + mBlockExtra, View.INVISIBLE);
+            } else {
+                // not hovering over it
+                applyRowState(hidden, 1, View.VISIBLE); //TODO why 1?
+            }
+        }
+        if (gap != null) {
+            applyRowState(gap, mItemHeightExpanded + mBlockExtra, View.VISIBLE);
+        }
+        mHiddenRow = hidden;
+        mExpandedRow = gap;
+
+        // Request re-layout since we changed the items layout
+        // and not doing this would cause bogus hitbox calculation
+        // in getChildGeometry
+        layoutChildren();
+
+        mExpansionFirst = getFirstVisiblePosition();
+        mExpansionCount = getChildCount();
+        mExpansionLast = getChildAt(mExpansionCount - 1);
+    }
+
+    /*
+      * DISPLACE_TRANSLATE counterpart of doExpansion(): rather than
+      * resizing rows, the rows between the original and the current
+      * drop position are drawn shifted by one row height, sliding
+      * there over the next frames. Nothing is laid out until the drop.
+      */
+    private void updateDisplacement() {
+        mController.restartDisplacement();
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        int swipeOffset = mSwipeDismisser.getOffset(child);
+        if (swipeOffset != 0) {
+            int saveCount = canvas.save();
+            canvas.translate(swipeOffset, 0);
+            boolean more = super.drawChild(canvas, child, drawingTime);
+            canvas.restoreToCount(saveCount);
+            return more;
+        }
+        return mController.drawChild(canvas, child, drawingTime);
+    }
+
+    private void applyRowState(View row, int height, int visibility) {
+        if (!isDraggableRow(row)) {
+            return;
+        }
+
+        ViewGroup.LayoutParams params = row.getLayoutParams();
+        if (params.height != height) {
+            params.height = height;
+            row.setLayoutParams(params);
+        }
+
+        if (row.getVisibility() == View.INVISIBLE && visibility == View.VISIBLE) {
+            makeRowVisible(row);
+        } else {
+            row.setVisibility(visibility);
+        }
+    }
+
+    private void resetExpansionState() {
+        mHiddenRow = null;
+        mExpandedRow = null;
+        mExpansionLast = null;
+        mExpansionFirst = INVALID_POSITION;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (isDragEnabled() && mController.isDragging()) {
+            int action = ev.getAction();
+            switch (action) {
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    mScrubber.flush();
+                    mDropTargetUpdater.flush();
+                    Rect r = mTempRect;
+                    getDragShadowRect(r);
+                    stopDragging();
+
+                    int from = mEngine.getFirstDragPosition();
+                    int to = mEngine.getDragPosition();
+                    if (action == MotionEvent.ACTION_CANCEL) {
+                        // the gesture was taken away, nothing it was about to do happens
+                        mController.reportMetrics(DragMetrics.OUTCOME_CANCEL);
+                        unExpandViews();
+                    } else if (!mEngine.isBlock()
+                            && mEngine.getRelease((int) ev.getX(), r.left, r.width()) == DragEngine.RELEASE_REMOVE) {
+                        mController.reportMetrics(DragMetrics.OUTCOME_SLIDE_REMOVE);
+                        removeRow(from);
+                    } else if (mEngine.isBlock()) {
+                        mController.reportMetrics(DragMetrics.OUTCOME_DROP);
+                        to = mEngine.getBlockTarget();
+                        if (to >= 0 && to <= getCount() - mEngine.getBlockCount()) {
+                            dropBlock(to);
+                        }
+                        unExpandViews();
+                    } else {
+                        mController.reportMetrics(DragMetrics.OUTCOME_DROP);
+                        if (to >= 0 && to < getCount()) {
+                            ReorderableAdapter adapter = getReorderableAdapter();
+                            if (adapter != null) {
+                                adapter.move(from, to);
+                            }
+                            if (mDropListener != null) {
+                                mDropListener.drop(from, to);
+                            }
+                        }
+                        unExpandViews();
+                    }
+                    break;
+
+                case MotionEvent.ACTION_DOWN:
+                case MotionEvent.ACTION_MOVE:
+                    int x = (int) ev.getX();
+                    int y = (int) ev.getY();
+                    mController.onMove(y, ev.getEventTime());
+                    dragView(x, y);
+                    if (mScrubber.scrub(x, y)) {
+                        break;
+                    }
+                    if (action == MotionEvent.ACTION_DOWN) {
+                        updateDropTarget(y, true);
+                    } else {
+                        requestDropTargetUpdate();
+                    }
+                    mController.autoScroll();
+                    break;
+            }
+            return true;
+        }
+        if (mSwipeDismisser.onTouchEvent(ev)) {
+            return true;
+        }
+        return super.onTouchEvent(ev);
+    }
+
+    /*
+      * Apply a block drop: in one call if the adapter can, otherwise
+      * as the equivalent series of single moves. The checked rows are
+      * then moved along with their data.
+      */
+    private void dropBlock(int to) {
+        int count = mEngine.getBlockCount();
+        if (mDropFrom.length != count) {
+            mDropFrom = new int[count];
+        }
+        int[] from = mDropFrom;
+        System.arraycopy(mEngine.getBlock(), 0, from, 0, count);
+
+        ReorderableAdapter adapter = getReorderableAdapter();
+        if (adapter instanceof BatchReorderableAdapter) {
+            ((BatchReorderableAdapter) adapter).move(from, to);
+            adapter = null;
+        }
+        DropListener listener = (mMultiDropListener == null) ? mDropListener : null;
+        if (adapter != null || listener != null) {
+            if (mDropMoves.length < count * 2) {
+                mDropMoves = new int[count * 2];
+            }
+            int[] moves = mDropMoves;
+            int pairs = DragEngine.getSingleMoves(from, count, to, moves);
+            for (int i = 0; i < pairs; i++) {
+                if (adapter != null) {
+                    adapter.move(moves[i * 2], moves[i * 2 + 1]);
+                }
+                if (listener != null) {
+                    listener.drop(moves[i * 2], moves[i * 2 + 1]);
+                }
+            }
+        }
+        if (mMultiDropListener != null) {
+            mMultiDropListener.drop(from, to);
+        }
+
+        clearChoices();
+        for (int i = 0; i < count; i++) {
+            setItemChecked(to + i, true);
+        }
+    }
+
+    /*
+      * What the DragController needs to know about a list: it
+      * scrolls by the pixel and rows are displaced vertically, by the
+      * dragged row's span. Data changes are passed on to the swipes
+      * and removals still in progress, so they don't act on positions
+      * that now belong to other rows.
+      */
+    private final class ListHost implements DragController.Host {
+        public void updateDropTarget() {
+            requestDropTargetUpdate();
+        }
+
+        public int getScrollStep() {
+            return 1;
+        }
+
+        public boolean scrollBy(int distance) {
+            return scrollContentBy(distance);
+        }
+
+        public boolean prefetch(float speed) {
+            return mPrefetchListener == null || requestPrefetch(speed);
+        }
+
+        public int getDisplacementPitch() {
+            return mEngine.getRowSpan();
+        }
+
+        public int getDisplacementX(int position) {
+            return 0;
+        }
+
+        public int getDisplacementY(int position) {
+            return mEngine.getDisplacement(position);
+        }
+
+        public boolean drawChild(Canvas canvas, View child, long drawingTime) {
+            return TouchListView.super.drawChild(canvas, child, drawingTime);
+        }
+
+        public void cancelDrag() {
+            TouchListView.this.cancelDrag();
+        }
+
+        public void onDataChanged(boolean invalidated) {
+            if (invalidated) {
+                mRemovalQueue.undo();
+                mRowCollapser.cancel();
+                mSwipeDismisser.cancel();
+            } else {
+                mRemovalQueue.remap();
+                mRowCollapser.onDataChanged();
+                mSwipeDismisser.onDataChanged();
+            }
+        }
+
+        /*
+          * One full pass over the rows, or a plain reset if the drag
+          * was cancelled.
+          */
+        public void onDataLaidOut() {
+            if (!mController.isDragging()) {
+                unExpandViews();
+                return;
+            }
+
+            resetExpansionState();
+            if (mDisplacementMode != DISPLACE_TRANSLATE) {
+                doExpansion();
+            }
+        }
+    }
+
+    /*
+      * With stable ids, the id of the row at position, to find it
+      * again after a data change; INVALID_ROW_ID otherwise.
+      */
+    private long getStableId(int position) {
+        ListAdapter adapter = getAdapter();
+        if (adapter == null || !adapter.hasStableIds() || position < 0 || position >= adapter.getCount()) {
+            return INVALID_ROW_ID;
+        }
+        return adapter.getItemId(position);
+    }
+
+    /*
+      * Where the row getStableId() named at position is now, or
+      * INVALID_POSITION if it is gone or there are no stable ids.
+      */
+    private int findRow(long id, int position) {
+        ListAdapter adapter = getAdapter();
+        if (id == INVALID_ROW_ID || adapter == null || !adapter.hasStableIds()) {
+            return INVALID_POSITION;
+        }
+        return DragController.findPosition(adapter, id, position, adapter.getCount());
+    }
+
+    private void cancelDrag() {
+        stopDragging();
+        mController.reportMetrics(DragMetrics.OUTCOME_CANCEL);
+    }
+
+    @Override
+    public void setAdapter(ListAdapter adapter) {
+        if (mController == null) {
+            // called from ListView's constructor for android:entries, before
+            // our fields are initialized; the constructor picks the adapter up
+            super.setAdapter(adapter);
+            return;
+        }
+        mRemovalQueue.flush();
+        if (mController.isDragging()) {
+            cancelDrag();
+            unExpandViews();
+        }
+        // the live shadow's row view belongs to the old adapter, never offer it to the new one
+        mShadowView = null;
+        mShadowViewType = AdapterView.ITEM_VIEW_TYPE_IGNORE;
+        mBlockScratch.clear();
+        super.setAdapter(adapter);
+        mController.setAdapter(adapter);
+    }
+
+    private void updateDropTarget(int y, boolean force) {
+        int from = mEngine.getDragPosition();
+        int itemnum = getItemForPosition(y);
+        if (mEngine.moveTo(itemnum, force)) {
+            mController.recordTargetId();
+            if (mDragListener != null) {
+                mDragListener.drag(from, itemnum);
+            }
+
+            //dont do expansion onDown - this will be done when the dragView is drawn for the first
+            //time to avoid flicker
+            //if(action != MotionEvent.ACTION_DOWN){
+                if (mController.isMeasuring()) {
+                    mController.getMetrics().mExpansionPasses++;
+                    TraceCompat.beginSection("TouchListView.doExpansion");
+                }
+                if (mDisplacementMode == DISPLACE_TRANSLATE) {
+                    updateDisplacement();
+                } else {
+                    doExpansion();
+                }
+                if (mController.isMeasuring()) {
+                    TraceCompat.endSection();
+                }
+            //}
+        }
+    }
+
+    private void requestDropTargetUpdate() {
+        if (mCoalesceDragEvents) {
+            mDropTargetUpdater.schedule();
+        } else {
+            updateDropTarget(mController.getLastY(), false);
+        }
+    }
+
+    /*
+      * With coalesce_drag_events, drop target updates (and with them
+      * the DragListener callback and the expansion pass) run at most
+      * once per frame, for the newest touch position; targets crossed
+      * in between are folded into one drag(from, to).
+      */
+    private final class DropTargetUpdater implements Runnable {
+        private boolean mPending;
+        private long mLastRun;
+
+        void schedule() {
+            if (mPending) {
+                return;
+            }
+            long wait = FRAME_DELAY - (SystemClock.uptimeMillis() - mLastRun);
+            if (wait <= 0) {
+                run();
+            } else {
+                mPending = true;
+                postDelayed(this, wait);
+            }
+        }
+
+        void flush() {
+            if (mPending) {
+                removeCallbacks(this);
+                run();
+            }
+        }
+
+        void cancel() {
+            mPending = false;
+            removeCallbacks(this);
+        }
+
+        public void run() {
+            mPending = false;
+            mLastRun = SystemClock.uptimeMillis();
+            if (mController.isDragging()) {
+                updateDropTarget(mController.getLastY(), false);
+            }
+        }
+    }
+
+    /*
+      * scrub_rail_width: once the finger, having been elsewhere, holds
+      * the dragged row over a rail along the right edge, the list
+      * jumps straight to the matching part of the adapter: by section
+      * if the adapter is a SectionIndexer, by fraction of the count
+      * otherwise. The rows in between are never laid out, auto-scroll
+      * holds still, and the drop target and expansion are worked out
+      * once, after the jump has been laid out.
+      */
+    private final class Scrubber implements Runnable {
+        private boolean mArmed;
+        private boolean mPending;
+        private int mPosition = INVALID_POSITION;
+
+        boolean isActive() {
+            return mPosition != INVALID_POSITION;
+        }
+
+        /*
+          * Returns true while the finger is on the rail.
+          */
+        boolean scrub(int x, int y) {
+            if (mScrubRailWidth <= 0 || x < getWidth() - mScrubRailWidth) {
+                // grabbing inside the rail must not start a jump
+                mArmed = true;
+                mPosition = INVALID_POSITION;
+                return false;
+            }
+            if (!mArmed || getCount() == 0) {
+                return false;
+            }
+
+            int position = getScrubPosition(y);
+            if (position != mPosition) {
+                mPosition = position;
+                mController.stopAutoScroll();
+                mDropTargetUpdater.cancel();
+                setSelectionFromTop(position, mEngine.getShadowTop(y, getDragShadowHeight()));
+                if (!mPending) {
+                    mPending = true;
+                    post(this);  // runs after the layout the jump asked for
+                }
+            }
+            return true;
+        }
+
+        private int getScrubPosition(int y) {
+            float fraction = Math.max(0f, Math.min(1f, y / (float) getHeight()));
+            SectionIndexer indexer = getSectionIndexer();
+            Object[] sections = (indexer != null) ? indexer.getSections() : null;
+            if (sections != null && sections.length > 0) {
+                int section = Math.min((int) (fraction * sections.length), sections.length - 1);
+                return Math.max(0, Math.min(indexer.getPositionForSection(section), getCount() - 1));
+            }
+            return Math.min((int) (fraction * getCount()), getCount() - 1);
+        }
+
+        void flush() {
+            if (mPending) {
+                removeCallbacks(this);
+                layoutChildren();
+                run();
+            }
+        }
+
+        void cancel() {
+            mPending = false;
+            mArmed = false;
+            mPosition = INVALID_POSITION;
+            removeCallbacks(this);
+        }
+
+        public void run() {
+            mPending = false;
+            if (mController.isDragging()) {
+                updateDropTarget(mController.getLastY(), false);
+            }
+        }
+    }
+
+    private SectionIndexer getSectionIndexer() {
+        ListAdapter adapter = getAdapter();
+        if (adapter instanceof HeaderViewListAdapter) {
+            adapter = ((HeaderViewListAdapter) adapter).getWrappedAdapter();
+        }
+        return (adapter instanceof SectionIndexer) ? (SectionIndexer) adapter : null;
+    }
+
+    /*
+      * Scroll the list contents by dy pixels, anchored on the first
+      * row still in view after the scroll, so no hit-testing is
+      * needed. Anchoring on a row that has gone off the top would
+      * have the layout rebuild every row from there down, more of
+      * them each frame. Returns false when the list is already at
+      * that end.
+      */
+    private boolean scrollContentBy(int dy) {
+        View first = getChildAt(0);
+        if (first == null) {
+            return false;
+        }
+
+        int top = getListPaddingTop();
+        int position = getFirstVisiblePosition();
+        if (dy < 0 && position == 0 && first.getTop() >= top) {
+            return false;
+        }
+        if (dy > 0 && getLastVisiblePosition() == getCount() - 1) {
+            View last = getChildAt(getChildCount() - 1);
+            if (last.getBottom() <= getHeight() - getListPaddingBottom()) {
+                return false;
+            }
+        }
+
+        int anchor = 0;
+        int last = getChildCount() - 1;
+        while (anchor < last && getChildAt(anchor).getBottom() - dy <= top) {
+            anchor++;
+        }
+        setSelectionFromTop(position + anchor, getChildAt(anchor).getTop() - top - dy);
+        return true;
+    }
+
+    /*
+      * Tell the DragPrefetchListener which rows auto-scrolling at
+      * speed will have brought into view PREFETCH_FRAMES frames from
+      * now. Row heights come from the height index where it has been
+      * filled in, otherwise normal_height is assumed. Returns what
+      * the listener answers.
+      */
+    private boolean requestPrefetch(float speed) {
+        View anchor = getChildAt(0);
+        if (anchor == null) {
+            return true;
+        }
+
+        int first = getFirstVisiblePosition();
+        int ahead = (int) (speed * PREFETCH_FRAMES * FRAME_DELAY / 1000f);
+        int predictedFirst;
+        int predictedLast;
+        if (mHeightIndex.size() == getCount()) {
+            long top = mHeightIndex.offsetOf(first) - anchor.getTop() + ahead;
+            predictedFirst = mHeightIndex.indexAt(top);
+            predictedLast = mHeightIndex.indexAt(top + getHeight());
+        } else {
+            int rows = ahead / Math.max(mItemHeightNormal + getDividerHeight(), 1);
+            int last = getCount() - 1;
+            predictedFirst = Math.max(0, Math.min(last, first + rows));
+            predictedLast = Math.max(0, Math.min(last, first + getChildCount() - 1 + rows));
+        }
+        return mPrefetchListener.onDragPrefetch(speed > 0 ? 1 : -1, Math.abs(speed),
+                predictedFirst, predictedLast);
+    }
+
+    /*
+      * Draw the row into a pooled bitmap rather than copying its
+      * drawing cache, so repeated grabs reuse the same memory. The
+      * snapshot may be downscaled; SnapshotView stretches it back
+      * to the row size.
+      */
+    private Bitmap captureRow(View item) {
+        item.draw(mController.beginCapture(item.getWidth(), item.getHeight()));
+        return mController.endCapture();
+    }
+
+    /*
+      * Draw the checked rows, in list order, into one pooled bitmap.
+      * Starting from the grabbed row, rows above and below are added
+      * while the shadow still fits into the list; rows that are not
+      * attached are bound through the adapter into scratch rows, see
+      * getBlockRow(). Sets
+      * mBlockOffset and mBlockExtra.
+      */
+    private Bitmap captureBlock(View item, int position, int count) {
+        ArrayList<View> rows = mBlockRows;
+        int width = item.getWidth();
+        int budget = getHeight();
+        int total = item.getHeight();
+        int index = 0;
+        while (mBlock[index] != position) {
+            index++;
+        }
+
+        rows.add(item);
+        int low = index;
+        int high = index;
+        boolean up = true;
+        boolean down = true;
+        while (up || down) {
+            if (up) {
+                up = low > 0;
+                if (up) {
+                    View row = getBlockRow(mBlock[low - 1], width);
+                    up = total + row.getHeight() <= budget;
+                    if (up) {
+                        rows.add(0, row);
+                        total += row.getHeight();
+                        mBlockOffset += row.getHeight();
+                        low--;
+                    }
+                }
+            }
+            if (down) {
+                down = high < count - 1;
+                if (down) {
+                    View row = getBlockRow(mBlock[high + 1], width);
+                    down = total + row.getHeight() <= budget;
+                    if (down) {
+                        rows.add(row);
+                        total += row.getHeight();
+                        high++;
+                    }
+                }
+            }
+        }
+        mBlockExtra = total - item.getHeight();
+
+        Canvas canvas = mController.beginCapture(width, total);
+        for (int i = 0; i < rows.size(); i++) {
+            View row = rows.get(i);
+            row.draw(canvas);
+            canvas.translate(0, row.getHeight());
+        }
+        rows.clear();
+        mBlockScratchUsed = 0;
+
+        return mController.endCapture();
+    }
+
+    /*
+      * The attached row for position, or, if it is scrolled off, a
+      * scratch row bound to it and laid out at the given width. The
+      * scratch rows are kept by view type and offered back to the
+      * adapter as convertViews, so a grab only inflates rows when it
+      * needs more of a type than any grab before it.
+      */
+    private View getBlockRow(int position, int width) {
+        View row = getChildAt(position - getFirstVisiblePosition());
+        if (row != null) {
+            return row;
+        }
+
+        ListAdapter adapter = getAdapter();
+        int type = adapter.getItemViewType(position);
+        if (type < 0) {
+            // ignored, header or footer: never handed a convertView
+            row = adapter.getView(position, null, this);
+        } else {
+            int slot = mBlockScratchUsed;
+            while (slot < mBlockScratch.size() && mBlockScratchTypes[slot] != type) {
+                slot++;
+            }
+            View convertView = (slot < mBlockScratch.size()) ? mBlockScratch.get(slot) : null;
+            row = adapter.getView(position, convertView, this);
+            if (convertView == null) {
+                mBlockScratch.add(row);
+                if (mBlockScratchTypes.length < mBlockScratch.size()) {
+                    mBlockScratchTypes = Arrays.copyOf(mBlockScratchTypes, Math.max(4, slot * 2));
+                }
+            }
+            // move it in front of the scratch rows still free for this capture
+            mBlockScratch.set(slot, mBlockScratch.get(mBlockScratchUsed));
+            mBlockScratchTypes[slot] = mBlockScratchTypes[mBlockScratchUsed];
+            mBlockScratch.set(mBlockScratchUsed, row);
+            mBlockScratchTypes[mBlockScratchUsed] = type;
+            mBlockScratchUsed++;
+        }
+
+        ViewGroup.LayoutParams params = row.getLayoutParams();
+        int heightSpec = (params != null && params.height > 0)
+                ? MeasureSpec.makeMeasureSpec(params.height, MeasureSpec.EXACTLY)
+                : MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+        row.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY), heightSpec);
+        row.layout(0, 0, width, row.getMeasuredHeight());
+        return row;
+    }
+
+    private void startDragging(Bitmap bm, int x, int y, int width, int height) {
+        stopDragging();
+
+        if(mContentView == null)
+            mContentView = (FrameLayout) getRootView().findViewById(android.R.id.content);
+
+        mWindowParams.width = width;
+        mWindowParams.height = height;
+        mWindowParams.leftMargin = x;
+        mWindowParams.topMargin = y - mEngine.getDragPoint();
+
+        mController.start(bm);
+        mContentView.addView(mSnapshotView, mWindowParams);
+        mDragView = mSnapshotView;
+    }
+
+    /*
+      * Shows the drag snapshot stretched to the row size. Unlike an
+      * ImageView it needs no new Drawable for every bitmap.
+      */
+    private final class SnapshotView extends View {
+        private final Rect mBounds = new Rect();
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        SnapshotView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            Bitmap bitmap = mController.getShadowBitmap();
+            if (bitmap != null) {
+                mBounds.set(0, 0, getWidth(), getHeight());
+                canvas.drawBitmap(bitmap, null, mBounds, mPaint);
+            }
+        }
+    }
+
+    /*
+      * SHADOW_LIVE: instead of copying the row into a bitmap and
+      * floating an ImageView above the window, bind a private row
+      * view through the adapter (reusing the previous one as the
+      * convertView) and draw it ourselves in dispatchDraw(). The
+      * on-screen row can't be used directly, since doExpansion()
+      * shrinks it and the recycler may hand it to another position.
+      */
+    private void startLiveDragging(int position, View item, int y) {
+        stopDragging();
+
+        ListAdapter adapter = getAdapter();
+        int type = adapter.getItemViewType(position);
+        View convertView = (type == mShadowViewType) ? mShadowView : null;
+
+        mShadowView = adapter.getView(position, convertView, this);
+        mShadowViewType = type;
+
+        int width = item.getWidth();
+        int height = item.getHeight();
+        mShadowView.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        mShadowView.layout(0, 0, width, height);
+
+        mController.start(null);
+        mController.showShadow(mShadowView, item.getLeft(), y - mEngine.getDragPoint(), width, height);
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        boolean displacing = mController.stepDisplacement();
+
+        // in case a scroll attached rows without telling onScrollChanged()
+        applyPendingRemovals();
+        super.dispatchDraw(canvas);
+
+        if (displacing) {
+            invalidate();
+        }
+        mController.drawShadow(canvas);
+    }
+
+    private int getDragShadowHeight() {
+        return (mDragView != null) ? mWindowParams.height : mController.getShadowHeight();
+    }
+
+    private void getDragShadowRect(Rect r) {
+        if (mDragView != null) {
+            mDragView.getDrawingRect(r);
+        } else {
+            r.set(0, 0, mController.getShadowWidth(), mController.getShadowHeight());
+        }
+    }
+
+    private void dragView(int x, int y) {
+        //at a minimum this should not go below listView height - bitmap height
+        int top = mEngine.getShadowTop(y, getDragShadowHeight());
+
+        if (mDragView == null) {
+            mController.moveShadow(mController.getShadowLeft(), top);
+            return;
+        }
+
+        mWindowParams.topMargin = top;
+        mContentView.updateViewLayout(mDragView, mWindowParams);
+    }
+
+    private void stopDragging() {
+        mDropTargetUpdater.cancel();
+        mScrubber.cancel();
+        if (mDragView != null) {
+            mContentView.removeView(mDragView);
+            mDragView = null;
+        }
+        mController.stop();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // while the list still observes the adapter, so it hears of the removals
+        mRemovalQueue.flush();
+        super.onDetachedFromWindow();
+        stopDragging();
+        mSwipeDismisser.cancel();
+        mController.onDetached();
+        mBlockScratch.clear();
+    }
+
+    public void setDragListener(DragListener l) {
+        mDragListener = l;
+    }
+
+    public void setDropListener(DropListener l) {
+        mDropListener = l;
+    }
+
+    /*
+      * Receives block drops (see the multi_drag attribute) in one
+      * call. Without one, the DropListener is told about a block drop
+      * as a series of single moves.
+      */
+    public void setMultiDropListener(MultiDropListener l) {
+        mMultiDropListener = l;
+    }
+
+    /*
+      * Asked on every auto-scroll step while a drag scrolls the list,
+      * so a paging adapter can load the rows coming up in time.
+      */
+    public void setDragPrefetchListener(DragPrefetchListener l) {
+        mPrefetchListener = l;
+    }
+
+    public void setRemoveListener(RemoveListener l) {
+        mRemoveListener = l;
+    }
+
+    /*
+      * With removal_undo_delay, receives the pending removals in one
+      * call instead of the RemoveListener getting them one by one.
+      */
+    public void setBatchRemoveListener(BatchRemoveListener l) {
+        mBatchRemoveListener = l;
+    }
+
+    /*
+      * With removal_undo_delay, brings back the rows whose removal is
+      * still pending. Returns false if there were none.
+      */
+    public boolean undoRemovals() {
+        return mRemovalQueue.undo();
+    }
+
+    /*
+      * With removal_undo_delay, hands the pending removals over now
+      * instead of at the end of the undo window.
+      */
+    public void flushRemovals() {
+        mRemovalQueue.flush();
+    }
+
+    /*
+      * Receives a DragMetrics summary at the end of every drag
+      * gesture. While one is set, startDragging, doExpansion and the
+      * re-layout after a removal also show up as android.os.Trace
+      * sections on releases that support them.
+      */
+    public void setDragMetricsListener(DragMetricsListener l) {
+        mController.setMetricsListener(l);
+    }
+
+    public interface DragListener {
+        void drag(int from, int to);
+    }
+
+    public interface DropListener {
+        void drop(int from, int to);
+    }
+
+    /*
+      * from holds the dragged positions in ascending order; they end
+      * up, in that order, at to, to + 1, ... of the reordered list.
+      * The array is reused for later drops: copy it to keep it.
+      */
+    public interface MultiDropListener {
+        void drop(int[] from, int to);
+    }
+
+    public interface RemoveListener {
+        void remove(int which);
+    }
+
+    /*
+      * which holds the removed positions in ascending order, all as
+      * they were before any of them was removed.
+      */
+    public interface BatchRemoveListener {
+        void remove(int[] which);
+    }
+
+    /*
+      * Implement on your row view, or on the object you set as its
+      * tag (e.g. a view holder), to hand TouchListView the grab
+      * handle directly instead of having it search the row for the
+      * grabber id. Return null for rows that cannot be dragged.
+      */
+    public interface DraggableRowHolder {
+        View getGrabber();
+    }
+
+    /*
+      * direction is 1 when scrolling towards the end of the list and
+      * -1 towards the start, speed is in pixels per second, and
+      * firstPosition to lastPosition are the rows expected to be
+      * visible a few frames from now. Return false while those rows
+      * are not loaded yet; auto-scrolling then pauses, keeping the
+      * drop target on loaded rows, and asks again every frame.
+      */
+    public interface DragPrefetchListener {
+        boolean onDragPrefetch(int direction, float speed, int firstPosition, int lastPosition);
+    }
+
+    public interface DragMetricsListener {
+        void onDragFinished(DragMetrics metrics);
     }
 }
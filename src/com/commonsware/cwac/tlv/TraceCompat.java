@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.commonsware.cwac.tlv;
+
+import java.lang.reflect.Method;
+
+/*
+  * android.os.Trace sections where the platform has them (API 18+),
+  * looked up reflectively since the library builds against API 4.
+  * Does nothing on older releases. Sections are only opened on the
+  * main thread, so one argument array serves every call and tracing
+  * allocates nothing.
+  */
+final class TraceCompat {
+    private static final Method sBeginSection;
+    private static final Method sEndSection;
+    private static final Object[] sName = new Object[1];
+    private static final Object[] sNoArgs = new Object[0];
+
+    static {
+        Method begin = null;
+        Method end = null;
+        try {
+            Class<?> trace = Class.forName("android.os.Trace");
+            begin = trace.getMethod("beginSection", String.class);
+            end = trace.getMethod("endSection");
+        } catch (Exception e) {
+            // pre-API 18, no tracing
+        }
+        sBeginSection = begin;
+        sEndSection = end;
+    }
+
+    private TraceCompat() {
+    }
+
+    static void beginSection(String name) {
+        if (sBeginSection != null) {
+            try {
+                sName[0] = name;
+                sBeginSection.invoke(null, sName);
+            } catch (Exception e) {
+                // tracing is best effort
+            }
+        }
+    }
+
+    static void endSection() {
+        if (sEndSection != null) {
+            try {
+                sEndSection.invoke(null, sNoArgs);
+            } catch (Exception e) {
+                // tracing is best effort
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+/*
+  * What aapt generates for res/values/cwac_touchlist_attrs.xml in a
+  * library project; the ant build generates the real one. Only the
+  * views need it, and Robolectric reads the attribute ids from it to
+  * resolve the attributes the tests set. Keep it in step with the
+  * attrs file.
+  */
+public final class R {
+    public static final class attr {
+        public static int normal_height = 0x7f010000;
+        public static int expanded_height = 0x7f010001;
+        public static int grabber = 0x7f010002;
+        public static int scroll_speed = 0x7f010003;
+        public static int dragndrop_background = 0x7f010004;
+        public static int drag_bitmap_format = 0x7f010005;
+        public static int drag_bitmap_scale = 0x7f010006;
+        public static int remove_mode = 0x7f010007;
+        public static int animate_removal = 0x7f010008;
+        public static int coalesce_drag_events = 0x7f010009;
+        public static int incremental_expansion = 0x7f01000a;
+        public static int displacement = 0x7f01000b;
+        public static int drag_shadow = 0x7f01000c;
+        public static int multi_drag = 0x7f01000d;
+        public static int scrub_rail_width = 0x7f01000e;
+        public static int removal_undo_delay = 0x7f01000f;
+        public static int removal_batch_size = 0x7f010010;
+    }
+
+    public static final class styleable {
+        public static int[] TouchListView = {
+            0x7f010000, 0x7f010001, 0x7f010002, 0x7f010003, 0x7f010004, 0x7f010005,
+            0x7f010006, 0x7f010007, 0x7f010008, 0x7f010009, 0x7f01000a, 0x7f01000b,
+            0x7f01000c, 0x7f01000d, 0x7f01000e, 0x7f01000f, 0x7f010010
+        };
+        public static int TouchListView_normal_height = 0;
+        public static int TouchListView_expanded_height = 1;
+        public static int TouchListView_grabber = 2;
+        public static int TouchListView_scroll_speed = 3;
+        public static int TouchListView_dragndrop_background = 4;
+        public static int TouchListView_drag_bitmap_format = 5;
+        public static int TouchListView_drag_bitmap_scale = 6;
+        public static int TouchListView_remove_mode = 7;
+        public static int TouchListView_animate_removal = 8;
+        public static int TouchListView_coalesce_drag_events = 9;
+        public static int TouchListView_incremental_expansion = 10;
+        public static int TouchListView_displacement = 11;
+        public static int TouchListView_drag_shadow = 12;
+        public static int TouchListView_multi_drag = 13;
+        public static int TouchListView_scrub_rail_width = 14;
+        public static int TouchListView_removal_undo_delay = 15;
+        public static int TouchListView_removal_batch_size = 16;
+
+        public static int[] TouchGridView = {
+            0x7f010002, 0x7f010003, 0x7f010004
+        };
+        public static int TouchGridView_grabber = 0;
+        public static int TouchGridView_scroll_speed = 1;
+        public static int TouchGridView_dragndrop_background = 2;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChildGeometryTest {
+    @Test
+    public void dividerBelongsToTheRowAbove() {
+        ChildGeometry geometry = new ChildGeometry();
+        geometry.begin(30, 3);
+        // rows of 40px with a 2px divider, the middle one collapsed to 1px
+        geometry.set(0, 0, 42);
+        geometry.set(1, 42, 45);
+        geometry.set(2, 45, 85);
+        geometry.end();
+
+        assertEquals(-1, geometry.rowAt(-1));
+        assertEquals(30, geometry.rowAt(0));
+        assertEquals(30, geometry.rowAt(41));
+        assertEquals(31, geometry.rowAt(42));
+        assertEquals(31, geometry.rowAt(44));
+        assertEquals(32, geometry.rowAt(45));
+        assertEquals(32, geometry.rowAt(84));
+        assertEquals(-1, geometry.rowAt(85));
+    }
+
+    @Test
+    public void emptyGeometryHitsNothing() {
+        ChildGeometry geometry = new ChildGeometry();
+        geometry.begin(0, 0);
+        geometry.end();
+        assertEquals(-1, geometry.rowAt(0));
+    }
+
+    @Test
+    public void snapshotIsCurrentUntilInvalidatedOrScrolled() {
+        ChildGeometry geometry = new ChildGeometry();
+        assertFalse(geometry.isCurrent(0, 0, 0));
+
+        geometry.begin(4, 2);
+        geometry.set(0, -10, 30);
+        geometry.set(1, 30, 70);
+        geometry.end();
+        assertTrue(geometry.isCurrent(4, 2, -10));
+        assertFalse(geometry.isCurrent(4, 2, -11));
+        assertFalse(geometry.isCurrent(5, 2, -10));
+        assertFalse(geometry.isCurrent(4, 3, -10));
+
+        geometry.invalidate();
+        assertFalse(geometry.isCurrent(4, 2, -10));
+    }
+
+    /*
+      * Random row heights, compared with a linear scan; the arrays are
+      * reused across snapshots of different sizes.
+      */
+    @Test
+    public void binarySearchMatchesALinearScan() {
+        Random random = new Random(5);
+        ChildGeometry geometry = new ChildGeometry();
+        for (int round = 0; round < 500; round++) {
+            int count = 1 + random.nextInt(40);
+            int first = random.nextInt(1000);
+            int[] tops = new int[count];
+            int[] bottoms = new int[count];
+            int top = -random.nextInt(100);
+            geometry.begin(first, count);
+            for (int i = 0; i < count; i++) {
+                tops[i] = top;
+                bottoms[i] = top + 1 + random.nextInt(120);
+                geometry.set(i, tops[i], bottoms[i]);
+                top = bottoms[i];
+            }
+            geometry.end();
+
+            for (int y = tops[0] - 5; y < bottoms[count - 1] + 5; y++) {
+                int expected = -1;
+                for (int i = 0; i < count; i++) {
+                    if (tops[i] <= y && y < bottoms[i]) {
+                        expected = first + i;
+                    }
+                }
+                assertEquals("round " + round + " y=" + y, expected, geometry.rowAt(y));
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/*
+  * Replays drags against the engine the way TouchListView feeds it,
+  * on a list of 20 rows of ROW pixels, all attached, in a LIST_HEIGHT
+  * high list.
+  */
+public class DragEngineTest {
+    private static final int ROW = 50;
+    private static final int ROWS = 20;
+    private static final int LIST_HEIGHT = 1000;
+    private static final int SLOP = 16;
+    private static final float MAX_SPEED = 1000f;
+
+    private ChildGeometry geometry;
+    private DragEngine engine;
+
+    @Before
+    public void setUp() {
+        geometry = new ChildGeometry();
+        geometry.begin(0, ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            geometry.set(i, i * ROW, (i + 1) * ROW);
+        }
+        geometry.end();
+        engine = new DragEngine(SLOP, DragEngine.REMOVE_SLIDE_RIGHT, ROW);
+    }
+
+    /*
+      * Row 5 grabbed 20px below its top, dragged down to the bottom
+      * edge and past it, then up past the top edge. For each touch
+      * event: finger y, drop position, child index of the gap, and
+      * auto-scroll speed.
+      */
+    @Test
+    public void replayedDragDownAndBackUp() {
+        int[][] events = {
+            { 270, 5, 5 },      // over the original row
+            { 300, 6, 7 },      // the gap opens below the collapsed original
+            { 420, 7, 8 },
+            { 800, 15, 16 },    // in the lower scroll zone
+            { 1000, 19, 20 },
+            { 1100, 19, 20 },   // below the last row: target kept
+            { 100, 2, 2 },      // above the original: no collapsed row in between
+            { 10, 0, 0 },
+            { -50, 0, 0 },      // above the list
+        };
+        float[] speeds = { 0, 0, 0, MAX_SPEED * 134 / 334, MAX_SPEED, MAX_SPEED,
+                -MAX_SPEED * 233 / 333, -MAX_SPEED * 323 / 333, -MAX_SPEED };
+
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        assertEquals(20, engine.getDragPoint());
+        for (int i = 0; i < events.length; i++) {
+            int y = events[i][0];
+            engine.adjustScrollBounds(y);
+            engine.moveTo(engine.getTarget(y, geometry), i == 0);
+
+            String event = "event " + i + " at y=" + y;
+            assertEquals(event, events[i][1], engine.getDragPosition());
+            assertEquals(event, events[i][2], engine.getGapChildIndex(0));
+            assertEquals(event, 5, engine.getHiddenChildIndex(0));
+            assertEquals(event, events[i][1] == 5, engine.isOverOrigin());
+            assertEquals(event, speeds[i], engine.getScrollSpeed(y, MAX_SPEED), 0.01f);
+        }
+        assertEquals(5, engine.getFirstDragPosition());
+    }
+
+    @Test
+    public void gapAndHiddenChildFollowTheFirstVisibleRow() {
+        engine.start(12, 620, 600, ROW, LIST_HEIGHT);
+        engine.moveTo(15, false);
+        assertEquals(15 - 10 + 1, engine.getGapChildIndex(10));
+        assertEquals(2, engine.getHiddenChildIndex(10));
+
+        engine.moveTo(11, false);
+        assertEquals(1, engine.getGapChildIndex(10));
+    }
+
+    @Test
+    public void moveToRejectsInvalidAndUnchangedTargets() {
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        assertFalse(engine.moveTo(-1, false));
+        assertFalse(engine.moveTo(5, false));
+        assertTrue(engine.moveTo(5, true));
+        assertTrue(engine.moveTo(8, false));
+        assertEquals(8, engine.getDragPosition());
+    }
+
+    /*
+      * displacement="translate": the rows between the original and the
+      * drop position shift by one row span towards the original.
+      */
+    @Test
+    public void translatedDisplacement() {
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        engine.moveTo(8, false);
+        int[] shifts = new int[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            shifts[i] = engine.getShift(i);
+        }
+        assertArrayEquals(new int[] { 0, 0, 0, 0, 0, 0, -1, -1, -1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, shifts);
+        assertEquals(-ROW, engine.getDisplacement(7));
+
+        engine.moveTo(2, false);
+        for (int i = 0; i < ROWS; i++) {
+            shifts[i] = engine.getShift(i);
+        }
+        assertArrayEquals(new int[] { 0, 0, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 }, shifts);
+        assertEquals(ROW, engine.getDisplacement(4));
+
+        engine.moveTo(5, false);
+        for (int i = 0; i < ROWS; i++) {
+            assertEquals(0, engine.getDisplacement(i));
+        }
+    }
+
+    /*
+      * The translated target is the row under the center of the
+      * dragged row, by content offset, also beyond the attached rows.
+      */
+    @Test
+    public void translatedTargetUsesContentOffsets() {
+        RowHeightIndex heights = new RowHeightIndex();
+        heights.reset(1000, ROW);
+        engine.start(105, 270, 250, ROW, LIST_HEIGHT);
+
+        // row 100 starts 20px above the top of the list
+        assertEquals(105, engine.getTranslatedTarget(270, heights, 100, -20));
+        assertEquals(107, engine.getTranslatedTarget(370, heights, 100, -20));
+        assertEquals(126, engine.getTranslatedTarget(1300, heights, 100, -20));
+        assertEquals(999, engine.getTranslatedTarget(Integer.MAX_VALUE / 2, heights, 100, -20));
+        assertEquals(0, engine.getTranslatedTarget(-100000, heights, 100, -20));
+    }
+
+    @Test
+    public void scrollZonesStartWhereTheRowWasGrabbed() {
+        // grabbed near the bottom edge: no scrolling until the finger has left the lower third
+        engine.start(19, 990, 950, ROW, LIST_HEIGHT);
+        assertEquals(0, engine.getScrollSpeed(1000, MAX_SPEED), 0f);
+        engine.adjustScrollBounds(500);
+        assertEquals(MAX_SPEED, engine.getScrollSpeed(1000, MAX_SPEED), 0.01f);
+        assertEquals(MAX_SPEED, engine.getScrollSpeed(5000, MAX_SPEED), 0f);
+        assertEquals(0, engine.getScrollSpeed(500, MAX_SPEED), 0f);
+    }
+
+    /*
+      * Grabbed within touch slop of the top edge, the upper zone has no
+      * room yet; a finger above the list must not scroll at all, least
+      * of all downwards.
+      */
+    @Test
+    public void grabNearTheTopEdgeDoesNotScrollBackwards() {
+        engine = new DragEngine(16, -1, ROW);
+        engine.start(0, 6, 0, ROW, LIST_HEIGHT);
+        for (int y = -1000; y < LIST_HEIGHT / 3; y += 7) {
+            assertEquals("y=" + y, 0, engine.getScrollSpeed(y, MAX_SPEED), 0f);
+        }
+
+        engine.adjustScrollBounds(LIST_HEIGHT / 2);
+        assertEquals(-MAX_SPEED, engine.getScrollSpeed(-200, MAX_SPEED), 0f);
+        for (int y = -1000; y < LIST_HEIGHT * 2; y += 7) {
+            float speed = engine.getScrollSpeed(y, MAX_SPEED);
+            assertTrue("y=" + y, speed >= -MAX_SPEED && speed <= MAX_SPEED);
+        }
+    }
+
+    @Test
+    public void shadowStaysInsideTheList() {
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        assertEquals(280, engine.getShadowTop(300, ROW));
+        assertEquals(0, engine.getShadowTop(-100, ROW));
+        assertEquals(LIST_HEIGHT - ROW, engine.getShadowTop(5000, ROW));
+    }
+
+    @Test
+    public void slideRemovalNeedsTheOuterQuarter() {
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        assertEquals(DragEngine.RELEASE_DROP, engine.getRelease(300, 0, 400));
+        assertEquals(DragEngine.RELEASE_REMOVE, engine.getRelease(301, 0, 400));
+
+        DragEngine left = new DragEngine(SLOP, DragEngine.REMOVE_SLIDE_LEFT, ROW);
+        assertEquals(DragEngine.RELEASE_REMOVE, left.getRelease(99, 0, 400));
+        assertEquals(DragEngine.RELEASE_DROP, left.getRelease(100, 0, 400));
+
+        DragEngine none = new DragEngine(SLOP, -1, ROW);
+        assertEquals(DragEngine.RELEASE_DROP, none.getRelease(399, 0, 400));
+    }
+
+    @Test
+    public void swipeDismissesPastHalfOrOnAFling() {
+        assertTrue(DragEngine.isSwipeDismiss(201, 0, 0, 400, 1000));
+        assertFalse(DragEngine.isSwipeDismiss(200, 0, 0, 400, 1000));
+        assertTrue(DragEngine.isSwipeDismiss(30, 1500, 100, 400, 1000));
+        // flung against the direction it was pulled, or mostly vertically
+        assertFalse(DragEngine.isSwipeDismiss(30, -1500, 100, 400, 1000));
+        assertFalse(DragEngine.isSwipeDismiss(30, 1500, 2000, 400, 1000));
+    }
+
+    @Test
+    public void remapMovesTheDragToTheNewPositions() {
+        engine.start(5, 270, 250, ROW, LIST_HEIGHT);
+        engine.moveTo(8, false);
+        engine.remap(7, 10);
+        assertEquals(7, engine.getFirstDragPosition());
+        assertEquals(10, engine.getDragPosition());
+        assertEquals(-1, engine.getShift(10));
+        assertEquals(0, engine.getShift(7));
+    }
+
+    /*
+      * Every block drop, spelled out as single moves, must give the
+      * same order as taking the block out and putting it back at its
+      * target.
+      */
+    @Test
+    public void blockDropsAsSingleMoves() {
+        Random random = new Random(3);
+        for (int round = 0; round < 2000; round++) {
+            int size = 2 + random.nextInt(15);
+            List<Integer> positions = new ArrayList<Integer>();
+            for (int i = 0; i < size; i++) {
+                if (random.nextInt(3) == 0) {
+                    positions.add(i);
+                }
+            }
+            if (positions.size() < 2) {
+                continue;
+            }
+            int count = positions.size();
+            int[] block = new int[count];
+            for (int i = 0; i < count; i++) {
+                block[i] = positions.get(i);
+            }
+
+            int grabbed = block[random.nextInt(count)];
+            engine.start(grabbed, 0, 0, ROW, LIST_HEIGHT);
+            engine.setBlock(block, count);
+            engine.moveTo(random.nextInt(size), true);
+            int to = engine.getBlockTarget();
+            String message = "round " + round;
+            assertTrue(message, to >= 0 && to <= size - count);
+
+            List<Integer> expected = newList(size);
+            List<Integer> moved = new ArrayList<Integer>(positions);
+            expected.removeAll(moved);
+            expected.addAll(to, moved);
+
+            int[] moves = new int[count * 2];
+            int pairs = DragEngine.getSingleMoves(block, count, to, moves);
+            List<Integer> actual = newList(size);
+            for (int i = 0; i < pairs; i++) {
+                actual.add(moves[i * 2 + 1], actual.remove(moves[i * 2]));
+            }
+            assertEquals(message, expected, actual);
+
+            for (int i = 0; i < size; i++) {
+                assertEquals(message, positions.contains(i), engine.isInBlock(i));
+            }
+        }
+    }
+
+    /*
+      * The block target counts the other block rows above the drop
+      * position out.
+      */
+    @Test
+    public void blockTarget() {
+        engine.start(4, 0, 0, ROW, LIST_HEIGHT);
+        engine.setBlock(new int[] { 1, 4, 6 }, 3);
+        assertTrue(engine.isBlock());
+        engine.moveTo(8, true);
+        // without row 4, rows 1 and 6 (now 5) are above position 8
+        assertEquals(6, engine.getBlockTarget());
+        engine.moveTo(0, true);
+        assertEquals(0, engine.getBlockTarget());
+    }
+
+    private static List<Integer> newList(int size) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import java.util.Arrays;
+
+import android.view.MotionEvent;
+
+/*
+  * A recorded touch stream: one sample per digitizer report, with
+  * its time from the down event, its action and its position in
+  * list coordinates. Moves are sampled every SAMPLE_MILLIS, as a
+  * touch screen would report them, and a finger held still reports
+  * nothing.
+  */
+final class Gesture {
+    static final int SAMPLE_MILLIS = 8;
+
+    private long[] times = new long[64];
+    private int[] actions = new int[64];
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+    private int count;
+    private long time;
+    private float lastX;
+    private float lastY;
+
+    static Gesture down(float x, float y) {
+        Gesture gesture = new Gesture();
+        gesture.add(MotionEvent.ACTION_DOWN, x, y);
+        return gesture;
+    }
+
+    /*
+      * Move in a straight line to x, y, taking millis.
+      */
+    Gesture moveTo(float x, float y, long millis) {
+        float startX = lastX;
+        float startY = lastY;
+        long start = time;
+        for (long t = SAMPLE_MILLIS; t < millis; t += SAMPLE_MILLIS) {
+            float fraction = t / (float) millis;
+            time = start + t;
+            add(MotionEvent.ACTION_MOVE, startX + (x - startX) * fraction, startY + (y - startY) * fraction);
+        }
+        time = start + millis;
+        add(MotionEvent.ACTION_MOVE, x, y);
+        return this;
+    }
+
+    Gesture hold(long millis) {
+        time += millis;
+        return this;
+    }
+
+    Gesture up() {
+        add(MotionEvent.ACTION_UP, lastX, lastY);
+        return this;
+    }
+
+    Gesture cancel() {
+        add(MotionEvent.ACTION_CANCEL, lastX, lastY);
+        return this;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long getTime(int index) {
+        return times[index];
+    }
+
+    /*
+      * The sample at index as an event, for a gesture that went down
+      * at downTime. Recycle it after dispatching.
+      */
+    MotionEvent obtain(int index, long downTime) {
+        return MotionEvent.obtain(downTime, downTime + times[index], actions[index], xs[index], ys[index], 0);
+    }
+
+    private void add(int action, float x, float y) {
+        if (count == times.length) {
+            int size = count * 2;
+            times = Arrays.copyOf(times, size);
+            actions = Arrays.copyOf(actions, size);
+            xs = Arrays.copyOf(xs, size);
+            ys = Arrays.copyOf(ys, size);
+        }
+        times[count] = time;
+        actions[count] = action;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+        lastX = x;
+        lastY = y;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.widget.AbsListView;
+
+/*
+  * Replays gestures through the views and holds each to a budget of
+  * layout passes, rebinds, grabber lookups, shadow bitmap memory and
+  * listener calls. The budgets are what each gesture took when it was
+  * written, with a little room. A change that needs more should raise
+  * the budget it breaks and say why.
+  */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, manifest = "../AndroidManifest.xml")
+public class GestureReplayTest {
+    private static final int ROWS = 1000;
+    private static final int ON_SCREEN = 16;  // rows in the 744px the activity leaves the list
+    private static final int SHADOW_BYTES = ListHarness.WIDTH * ListHarness.ROW_HEIGHT * 4;
+
+    /*
+      * The middle of row on screen.
+      */
+    private static int y(int row) {
+        return row * ListHarness.ROW_HEIGHT + ListHarness.ROW_HEIGHT / 2;
+    }
+
+    private static void checkBlock(ListHarness harness, int... positions) {
+        harness.list.clearChoices();
+        for (int position : positions) {
+            harness.list.setItemChecked(position, true);
+        }
+    }
+
+    @Test
+    public void slowDragRebindsOnlyOnDrop() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, y(7), 1500).up());
+
+        assertEquals(7, harness.positionOf(1));
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_DROP), harness.outcomes);
+        harness.counts.assertWithin("slow drag", new ListHarness.Counts()
+                .layouts(18).layoutRequests(9).findViewById(ON_SCREEN).getViews(ON_SCREEN)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(8));
+    }
+
+    @Test
+    public void fastDragDoesNoMoreThanSlowOne() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, y(7), 80).up());
+
+        assertEquals(7, harness.positionOf(1));
+        harness.counts.assertWithin("fast drag", new ListHarness.Counts()
+                .layouts(18).layoutRequests(9).findViewById(ON_SCREEN).getViews(ON_SCREEN)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(8));
+    }
+
+    @Test
+    public void secondDragReusesShadowBitmap() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, y(7), 500).up());
+
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, y(7), 500).up());
+
+        assertEquals(7, harness.positionOf(2));
+        harness.counts.assertWithin("second drag", new ListHarness.Counts()
+                .layouts(18).layoutRequests(9).findViewById(ON_SCREEN).getViews(ON_SCREEN)
+                .bitmapBytes(0).listenerCalls(8));
+    }
+
+    @Test
+    public void blockGrabReusesOffScreenRows() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.multi_drag, "true").build());
+        harness.list.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        Gesture drag = Gesture.down(200, y(1)).moveTo(200, y(3), 300).up();
+        // rows 20 and 21 are off screen, bound only to draw the block shadow
+        checkBlock(harness, 1, 20, 21);
+        harness.replay(drag);
+        int created = harness.rowsCreated;
+
+        checkBlock(harness, 1, 20, 21);
+        harness.replay(drag);
+
+        assertEquals(created, harness.rowsCreated);
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_DROP, DragMetrics.OUTCOME_DROP), harness.outcomes);
+    }
+
+    @Test
+    public void autoScrollBindsEachRowOnce() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, 730, 300).hold(1000).up());
+
+        assertTrue(harness.list.getFirstVisiblePosition() > 0);
+        int dropped = harness.positionOf(1);
+        assertTrue(dropped >= harness.list.getFirstVisiblePosition()
+                && dropped <= harness.list.getLastVisiblePosition());
+        // one bind per row scrolled into view, plus the rebind after the drop
+        int bound = harness.list.getFirstVisiblePosition() + ON_SCREEN;
+        harness.counts.assertWithin("auto-scroll", new ListHarness.Counts()
+                .layouts(140).layoutRequests(125).findViewById(bound + 4).getViews(bound + 4)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(45));
+    }
+
+    @Test
+    public void slideRightRemoves() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, "slideRight").build());
+
+        harness.replay(Gesture.down(100, y(1)).moveTo(460, y(1), 300).up());
+
+        assertEquals(-1, harness.positionOf(1));
+        assertEquals(ROWS - 1, harness.adapter.getCount());
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_SLIDE_REMOVE), harness.outcomes);
+        harness.counts.assertWithin("slide right", new ListHarness.Counts()
+                .layouts(4).layoutRequests(2).findViewById(ON_SCREEN).getViews(ON_SCREEN)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(2));
+    }
+
+    @Test
+    public void slideLeftRemoves() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, "slideLeft").build());
+
+        harness.replay(Gesture.down(400, y(1)).moveTo(20, y(1), 300).up());
+
+        assertEquals(-1, harness.positionOf(1));
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_SLIDE_REMOVE), harness.outcomes);
+        harness.counts.assertWithin("slide left", new ListHarness.Counts()
+                .layouts(4).layoutRequests(2).findViewById(ON_SCREEN).getViews(ON_SCREEN)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(2));
+    }
+
+    @Test
+    public void swipeRemoves() {
+        // no grabber in the rows, so the swipe is not taken for a drag
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, "swipe")
+                .addAttribute(R.attr.grabber, "@android:id/icon").build());
+
+        harness.replay(Gesture.down(100, y(1)).moveTo(400, y(1), 100).up());
+
+        assertEquals(-1, harness.positionOf(1));
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_FLING_REMOVE), harness.outcomes);
+        harness.counts.assertWithin("swipe", new ListHarness.Counts()
+                .layouts(15).layoutRequests(15).findViewById(ON_SCREEN + 4).getViews(ON_SCREEN + 4)
+                .bitmapBytes(0).listenerCalls(1));
+    }
+
+    @Test
+    public void shortSwipeSlidesBack() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, "swipe")
+                .addAttribute(R.attr.grabber, "@android:id/icon").build());
+
+        // a quarter of the row, slowly: neither far nor fast enough
+        harness.replay(Gesture.down(100, y(1)).moveTo(220, y(1), 1000).hold(200).up());
+
+        assertEquals(1, harness.positionOf(1));
+        assertEquals(Arrays.asList(DragMetrics.OUTCOME_CANCEL), harness.outcomes);
+        // the row slides back without a layout; the one pass is AbsListView pressing the row on its tap timeout
+        harness.counts.assertWithin("short swipe", new ListHarness.Counts()
+                .layouts(1).layoutRequests(0).findViewById(1).getViews(0)
+                .bitmapBytes(0).listenerCalls(0));
+    }
+
+    @Test
+    public void translatedDragDoesNotLayOut() {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.displacement, "translate").build());
+
+        harness.replay(Gesture.down(200, y(1)).moveTo(200, y(7), 1500).up());
+
+        assertEquals(7, harness.positionOf(1));
+        // the only layout pass is the one after the drop
+        harness.counts.assertWithin("translated drag", new ListHarness.Counts()
+                .layouts(1).layoutRequests(1).findViewById(1).getViews(ON_SCREEN)
+                .bitmapBytes(SHADOW_BYTES).listenerCalls(8));
+    }
+
+    @Test
+    public void gridDragDoesNotLayOut() {
+        ListHarness harness = ListHarness.grid(ROWS, 4, ListHarness.attributes().build());
+
+        // from the first cell to the third column of the fourth row
+        harness.replay(Gesture.down(60, y(0)).moveTo(300, y(3), 1000).up());
+
+        assertEquals(14, harness.positionOf(0));
+        assertEquals(0, harness.list.getFirstVisiblePosition());
+        harness.counts.assertWithin("grid drag", new ListHarness.Counts()
+                .layouts(1).layoutRequests(1).findViewById(1).getViews(4 * ON_SCREEN + 4)
+                .bitmapBytes(ListHarness.WIDTH / 4 * ListHarness.ROW_HEIGHT * 4).listenerCalls(8));
+    }
+}
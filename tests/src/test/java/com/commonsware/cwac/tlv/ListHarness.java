@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowChoreographer;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/*
+  * Puts a TouchListView or a TouchGridView into an activity under
+  * Robolectric and replays Gestures against it in simulated time.
+  * Every FRAME_MILLIS the main looper runs what came due
+  * (auto-scroll, animations, the undo window), then the window is
+  * laid out if anything asked for it and the view is drawn. The main looper is
+  * paused and the window's own traversals are held off, so frames
+  * happen exactly when the harness says. Along the way it counts the
+  * work the view does, so each gesture can be held to a budget.
+  */
+final class ListHarness {
+    static final int WIDTH = 480;
+    static final int HEIGHT = 800;
+    static final int ROW_HEIGHT = 48;
+    static final int FRAME_MILLIS = 16;
+    static final int SETTLE_MILLIS = 500;  // run after a gesture, for what it set off to finish
+
+    final Counts counts = new Counts();
+    final Activity activity;
+    final AbsListView list;
+    final CountingAdapter adapter;
+    final List<Integer> outcomes = new ArrayList<Integer>();
+    int rowsCreated;  // row views the adapter inflated, over the harness's life
+    private final View decor;
+    private final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+    private long nextFrame;
+
+    /*
+      * normal_height, expanded_height and a grabber covering the
+      * whole row; add the attributes a test is about.
+      */
+    static Robolectric.AttributeSetBuilder attributes() {
+        return Robolectric.buildAttributeSet()
+                .addAttribute(R.attr.normal_height, ROW_HEIGHT + "px")
+                .addAttribute(R.attr.expanded_height, (2 * ROW_HEIGHT) + "px")
+                .addAttribute(R.attr.grabber, "@android:id/text1");
+    }
+
+    /*
+      * A TouchListView of rows rows.
+      */
+    ListHarness(int rows, AttributeSet attrs) {
+        this(rows, 0, attrs);
+    }
+
+    /*
+      * A TouchGridView of cells cells, columns to a row.
+      */
+    static ListHarness grid(int cells, int columns, AttributeSet attrs) {
+        return new ListHarness(cells, columns, attrs);
+    }
+
+    private ListHarness(int rows, int columns, AttributeSet attrs) {
+        ShadowLooper.pauseMainLooper();
+        ShadowChoreographer.setPostCallbackDelay(Integer.MAX_VALUE);
+        activity = Robolectric.buildActivity(Activity.class).create().start().resume().visible().get();
+
+        TouchListView.DragListener dragListener = new TouchListView.DragListener() {
+            public void drag(int from, int to) {
+                counts.listenerCalls++;
+            }
+        };
+        TouchListView.DropListener dropListener = new TouchListView.DropListener() {
+            public void drop(int from, int to) {
+                counts.listenerCalls++;
+            }
+        };
+        TouchListView.DragMetricsListener metricsListener = new TouchListView.DragMetricsListener() {
+            public void onDragFinished(DragMetrics metrics) {
+                counts.bitmapBytes += metrics.getShadowBytes();
+                outcomes.add(metrics.getOutcome());
+            }
+        };
+
+        adapter = new CountingAdapter(rows);
+        if (columns == 0) {
+            CountingListView listView = new CountingListView(activity, attrs);
+            activity.setContentView(listView);
+            listView.setAdapter(adapter);
+            listView.setDragListener(dragListener);
+            listView.setDropListener(dropListener);
+            listView.setRemoveListener(new TouchListView.RemoveListener() {
+                public void remove(int which) {
+                    counts.listenerCalls++;
+                }
+            });
+            listView.setDragMetricsListener(metricsListener);
+            list = listView;
+        } else {
+            CountingGridView gridView = new CountingGridView(activity, attrs);
+            gridView.setNumColumns(columns);
+            activity.setContentView(gridView);
+            gridView.setAdapter(adapter);
+            gridView.setDragListener(dragListener);
+            gridView.setDropListener(dropListener);
+            gridView.setDragMetricsListener(metricsListener);
+            list = gridView;
+        }
+
+        decor = activity.getWindow().getDecorView();
+        attach();
+        frame();
+        nextFrame = SystemClock.uptimeMillis() + FRAME_MILLIS;
+    }
+
+    /*
+      * Dispatch the gesture's events at their times, starting now,
+      * then run SETTLE_MILLIS more. Resets the counts first.
+      */
+    void replay(Gesture gesture) {
+        counts.reset();
+        long downTime = SystemClock.uptimeMillis();
+        for (int i = 0; i < gesture.size(); i++) {
+            advanceTo(downTime + gesture.getTime(i));
+            MotionEvent event = gesture.obtain(i, downTime);
+            list.dispatchTouchEvent(event);
+            event.recycle();
+        }
+        run(SETTLE_MILLIS);
+    }
+
+    void run(long millis) {
+        advanceTo(SystemClock.uptimeMillis() + millis);
+    }
+
+    /*
+      * The adapter position of item, or -1.
+      */
+    int positionOf(long item) {
+        for (int i = 0; i < adapter.getCount(); i++) {
+            if (adapter.getItem(i) == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void advanceTo(long time) {
+        while (nextFrame <= time) {
+            Robolectric.getForegroundThreadScheduler().advanceTo(nextFrame);
+            frame();
+            nextFrame += FRAME_MILLIS;
+        }
+        Robolectric.getForegroundThreadScheduler().advanceTo(time);
+    }
+
+    /*
+      * Robolectric's View.draw() only paints the background, so the
+      * view under test is drawn by calling its dispatchDraw(), where
+      * the views step their animations and draw the drag shadow.
+      */
+    private void frame() {
+        if (decor.isLayoutRequested()) {
+            decor.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            decor.layout(0, 0, WIDTH, HEIGHT);
+        }
+        ReflectionHelpers.callInstanceMethod(list, "dispatchDraw", ClassParameter.from(Canvas.class, canvas));
+    }
+
+    /*
+      * Run the window's first traversal, the one that attaches the
+      * views, which the paused Choreographer would otherwise hold
+      * forever. Then put the window in touch mode, as ViewRootImpl
+      * does when it delivers the first touch event: the harness hands
+      * events straight to the view. Out of touch mode the views keep
+      * a selection and scroll to it after every data change.
+      */
+    private void attach() {
+        ReflectionHelpers.callInstanceMethod(decor.getParent(), "doTraversal");
+        Object attachInfo = ReflectionHelpers.getField(decor, "mAttachInfo");
+        ReflectionHelpers.setField(attachInfo, "mInTouchMode", true);
+    }
+
+    /*
+      * Robolectric reports an eng build, on which every view checks
+      * the events it gets and formats each one into a string while
+      * doing so. User builds don't, so neither do the views under
+      * test.
+      */
+    private static void skipConsistencyChecks(View view) {
+        ReflectionHelpers.setField(View.class, view, "mInputEventConsistencyVerifier", null);
+    }
+
+    /*
+      * The work done during one replay, or, built up with the setters,
+      * a budget for it.
+      */
+    static final class Counts {
+        int layouts;            // layoutChildren() passes of the view
+        int layoutRequests;     // requestLayout() calls on the view
+        int findViewById;       // searches through a row
+        int getViews;           // adapter getView() calls, new rows and rebinds
+        long bitmapBytes;       // new drag shadow bitmap memory
+        int listenerCalls;      // DragListener, DropListener and RemoveListener calls
+
+        Counts layouts(int max) {
+            layouts = max;
+            return this;
+        }
+
+        Counts layoutRequests(int max) {
+            layoutRequests = max;
+            return this;
+        }
+
+        Counts findViewById(int max) {
+            findViewById = max;
+            return this;
+        }
+
+        Counts getViews(int max) {
+            getViews = max;
+            return this;
+        }
+
+        Counts bitmapBytes(long max) {
+            bitmapBytes = max;
+            return this;
+        }
+
+        Counts listenerCalls(int max) {
+            listenerCalls = max;
+            return this;
+        }
+
+        void reset() {
+            layouts = 0;
+            layoutRequests = 0;
+            findViewById = 0;
+            getViews = 0;
+            bitmapBytes = 0;
+            listenerCalls = 0;
+        }
+
+        /*
+          * Fails, naming every count over budget, if any is.
+          */
+        void assertWithin(String scenario, Counts budget) {
+            StringBuilder over = new StringBuilder();
+            check(over, "layoutChildren", layouts, budget.layouts);
+            check(over, "requestLayout", layoutRequests, budget.layoutRequests);
+            check(over, "findViewById", findViewById, budget.findViewById);
+            check(over, "getView", getViews, budget.getViews);
+            check(over, "bitmap bytes", bitmapBytes, budget.bitmapBytes);
+            check(over, "listener calls", listenerCalls, budget.listenerCalls);
+            if (over.length() > 0) {
+                fail(scenario + " over budget:" + over + " (" + this + ")");
+            }
+        }
+
+        private static void check(StringBuilder over, String name, long count, long max) {
+            if (count > max) {
+                over.append(' ').append(name).append(' ').append(count).append(" > ").append(max);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "layoutChildren=" + layouts + " requestLayout=" + layoutRequests
+                    + " findViewById=" + findViewById + " getView=" + getViews
+                    + " bitmapBytes=" + bitmapBytes + " listenerCalls=" + listenerCalls;
+        }
+    }
+
+    final class CountingListView extends TouchListView {
+        CountingListView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            skipConsistencyChecks(this);
+        }
+
+        @Override
+        protected void layoutChildren() {
+            counts.layouts++;
+            super.layoutChildren();
+        }
+
+        @Override
+        public void requestLayout() {
+            counts.layoutRequests++;
+            super.requestLayout();
+        }
+    }
+
+    final class CountingGridView extends TouchGridView {
+        CountingGridView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+            skipConsistencyChecks(this);
+        }
+
+        @Override
+        protected void layoutChildren() {
+            counts.layouts++;
+            super.layoutChildren();
+        }
+
+        @Override
+        public void requestLayout() {
+            counts.layoutRequests++;
+            super.requestLayout();
+        }
+    }
+
+    /*
+      * Items are their own stable ids, 0 to rows - 1 to begin with.
+      */
+    final class CountingAdapter extends BaseReorderableAdapter<Long> {
+        CountingAdapter(int rows) {
+            for (long i = 0; i < rows; i++) {
+                add(i);
+            }
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position);
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        public View getView(int position, View convertView, ViewGroup parent) {
+            counts.getViews++;
+            CountingRow row = (CountingRow) convertView;
+            if (row == null) {
+                row = new CountingRow(parent.getContext());
+            }
+            row.text.setText("row " + getItem(position));
+            return row;
+        }
+    }
+
+    final class CountingRow extends FrameLayout {
+        final TextView text;
+
+        CountingRow(Context context) {
+            super(context);
+            rowsCreated++;
+            setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ROW_HEIGHT));
+            text = new TextView(context);
+            text.setId(android.R.id.text1);
+            addView(text, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                    ViewGroup.LayoutParams.MATCH_PARENT));
+            skipConsistencyChecks(this);
+            skipConsistencyChecks(text);
+        }
+
+        @Override
+        protected View findViewTraversal(int id) {
+            counts.findViewById++;
+            return super.findViewTraversal(id);
+        }
+    }
+}
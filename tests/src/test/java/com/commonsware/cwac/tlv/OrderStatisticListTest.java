@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class OrderStatisticListTest {
+    @Test
+    public void keepsInsertionOrder() {
+        OrderStatisticList<Integer> list = new OrderStatisticList<Integer>();
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+        list.add(0, -1);
+        list.add(101, 100);
+
+        assertEquals(102, list.size());
+        for (int i = 0; i < 102; i++) {
+            assertEquals(Integer.valueOf(i - 1), list.get(i));
+        }
+    }
+
+    @Test
+    public void blockMoveKeepsTheBlockInOrder() {
+        OrderStatisticList<Integer> list = new OrderStatisticList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+
+        // 1, 3 and 4 out, leaving 0 2 5 6 7 8 9, and back in before 7
+        list.move(new int[] {1, 3, 4}, 3, 5);
+
+        int[] expected = {0, 2, 5, 6, 7, 1, 3, 4, 8, 9};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(Integer.valueOf(expected[i]), list.get(i));
+        }
+    }
+
+    @Test
+    public void rejectsIndicesOutOfRange() {
+        OrderStatisticList<Integer> list = new OrderStatisticList<Integer>();
+        list.add(0);
+        try {
+            list.get(1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+        try {
+            list.add(2, 1);
+            fail();
+        } catch (IndexOutOfBoundsException expected) {
+        }
+    }
+
+    /*
+      * Random adds, removes, moves and block moves, each done to an
+      * ArrayList as well, and the two compared after every step.
+      */
+    @Test
+    public void matchesArrayList() {
+        Random random = new Random(23);
+        OrderStatisticList<Integer> list = new OrderStatisticList<Integer>();
+        List<Integer> expected = new ArrayList<Integer>();
+        int next = 0;
+        int[] from = new int[16];
+
+        for (int round = 0; round < 3000; round++) {
+            int size = expected.size();
+            int op = size < 2 ? 0 : random.nextInt(5);
+            String message = "round " + round + " op " + op;
+
+            switch (op) {
+                case 0: {
+                    int index = random.nextInt(size + 1);
+                    list.add(index, next);
+                    expected.add(index, next);
+                    next++;
+                    break;
+                }
+                case 1: {
+                    list.add(next);
+                    expected.add(next);
+                    next++;
+                    break;
+                }
+                case 2: {
+                    int index = random.nextInt(size);
+                    assertEquals(message, expected.remove(index), list.remove(index));
+                    break;
+                }
+                case 3: {
+                    int source = random.nextInt(size);
+                    int to = random.nextInt(size);
+                    list.move(source, to);
+                    expected.add(to, expected.remove(source));
+                    break;
+                }
+                default: {
+                    int count = 1 + random.nextInt(Math.min(size, from.length));
+                    pickSorted(random, size, from, count);
+                    int to = random.nextInt(size - count + 1);
+                    list.move(from, count, to);
+
+                    List<Integer> block = new ArrayList<Integer>();
+                    for (int i = count - 1; i >= 0; i--) {
+                        block.add(0, expected.remove(from[i]));
+                    }
+                    expected.addAll(to, block);
+                    break;
+                }
+            }
+
+            assertEquals(message, expected.size(), list.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(message + " index " + i, expected.get(i), list.get(i));
+            }
+        }
+    }
+
+    /*
+      * count distinct indices below size into from, ascending.
+      */
+    private static void pickSorted(Random random, int size, int[] from, int count) {
+        int picked = 0;
+        for (int i = 0; i < size && picked < count; i++) {
+            // selection sampling: keep i with probability needed / left
+            if (random.nextInt(size - i) < count - picked) {
+                from[picked++] = i;
+            }
+        }
+    }
+}
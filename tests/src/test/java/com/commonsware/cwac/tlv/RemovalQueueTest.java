@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/*
+  * removal_undo_delay: removed rows are queued and collapsed, and only
+  * handed to the adapter when the undo window closes.
+  */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, manifest = "../AndroidManifest.xml")
+public class RemovalQueueTest {
+    private static final int ROWS = 100;
+
+    private ListHarness harness;
+    private TouchListView list;
+
+    @Before
+    public void setUp() {
+        setUp("slideRight", "@android:id/text1");
+    }
+
+    private void setUp(String removeMode, String grabber) {
+        harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, removeMode)
+                .addAttribute(R.attr.grabber, grabber)
+                .addAttribute(R.attr.removal_undo_delay, "60000").build());
+        list = (TouchListView) harness.list;
+    }
+
+    @Test
+    public void followsQueuedRowsThroughReorders() {
+        // a new drag would hand the queue over, swipes add to it
+        setUp("swipe", "@android:id/icon");
+        slideOff(10);
+        slideOff(5);
+
+        harness.adapter.move(harness.positionOf(10), 3);
+        harness.adapter.move(50, 60);
+        list.flushRemovals();
+
+        assertEquals(ROWS - 2, harness.adapter.getCount());
+        assertEquals(-1, harness.positionOf(5));
+        assertEquals(-1, harness.positionOf(10));
+        assertEquals(5, harness.positionOf(6));
+    }
+
+    @Test
+    public void detachingHandsOverPendingRemovals() {
+        slideOff(2);
+
+        ((ViewGroup) list.getParent()).removeView(list);
+
+        assertEquals(ROWS - 1, harness.adapter.getCount());
+        assertEquals(-1, harness.positionOf(2));
+    }
+
+    @Test
+    public void scrollingKeepsOnlyPendingRowsCollapsed() {
+        slideOff(1);
+        assertRowsShown();
+
+        for (int i = 0; i < 6; i++) {
+            list.scrollListBy(5 * ListHarness.ROW_HEIGHT);
+            harness.run(ListHarness.FRAME_MILLIS);
+            assertRowsShown();
+        }
+        for (int i = 0; i < 6; i++) {
+            list.scrollListBy(-5 * ListHarness.ROW_HEIGHT);
+            harness.run(ListHarness.FRAME_MILLIS);
+            assertRowsShown();
+        }
+        assertEquals(0, list.getFirstVisiblePosition());
+    }
+
+    /*
+      * Slide, or swipe, the row showing item off to the right. It is
+      * found by position, as rows collapsed above it have moved it up.
+      */
+    private void slideOff(long item) {
+        View row = list.getChildAt(harness.positionOf(item) - list.getFirstVisiblePosition());
+        int y = row.getTop() + row.getHeight() / 2;
+
+        harness.replay(Gesture.down(100, y).moveTo(460, y, 300).up());
+
+        assertEquals(ROWS, harness.adapter.getCount());
+    }
+
+    /*
+      * Every attached row shows, at full height, except the one with
+      * item 1, whose removal is pending.
+      */
+    private void assertRowsShown() {
+        int first = list.getFirstVisiblePosition();
+        for (int i = 0; i < list.getChildCount(); i++) {
+            View row = list.getChildAt(i);
+            boolean pending = harness.adapter.getItem(first + i) == 1;
+            String what = "row at " + (first + i);
+            assertEquals(what, pending ? View.INVISIBLE : View.VISIBLE, row.getVisibility());
+            assertEquals(what, pending ? 1 : ListHarness.ROW_HEIGHT, row.getHeight());
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/*
+  * Runs under Robolectric only for android.util.Log, which the
+  * journal uses when a sink fails.
+  */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, manifest = Config.NONE)
+public class ReorderJournalTest {
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    private ScheduledExecutorService executor;
+    private RecordingSink sink;
+    private ReorderJournal journal;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        sink = new RecordingSink();
+        journal = new ReorderJournal(sink, executor, NEVER);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void continuingMovesFoldIntoOne() {
+        journal.recordMove(2, 5);
+        journal.recordMove(5, 7);
+        assertEquals(1, journal.getPendingCount());
+
+        journal.flush();
+        assertOps(sink.batches.get(0), ReorderJournal.MOVE, 2, 7);
+    }
+
+    @Test
+    public void moveAndMoveBackCancelOut() {
+        journal.recordMove(2, 5);
+        journal.recordMove(5, 2);
+        assertEquals(0, journal.getPendingCount());
+
+        journal.flush();
+        assertTrue(sink.batches.isEmpty());
+    }
+
+    @Test
+    public void moveToTheSamePlaceIsNotRecorded() {
+        journal.recordMove(3, 3);
+        assertEquals(0, journal.getPendingCount());
+    }
+
+    @Test
+    public void removingAMovedRowRemovesItFromWhereItCameFrom() {
+        journal.recordMove(2, 5);
+        journal.recordRemove(5);
+
+        journal.flush();
+        assertOps(sink.batches.get(0), ReorderJournal.REMOVE, 2, 2);
+    }
+
+    @Test
+    public void unrelatedOperationsAreKeptInOrder() {
+        journal.recordMove(1, 3);
+        journal.recordMove(4, 0);
+        journal.recordRemove(2);
+
+        journal.flush();
+        assertOps(sink.batches.get(0),
+                ReorderJournal.MOVE, 1, 3,
+                ReorderJournal.MOVE, 4, 0,
+                ReorderJournal.REMOVE, 2, 2);
+    }
+
+    @Test
+    public void blockDropIsRecordedAsItsSingleMoves() {
+        List<Integer> expected = newList(10);
+        List<Integer> moved = new ArrayList<Integer>(Arrays.asList(expected.get(1), expected.get(4), expected.get(5)));
+        expected.removeAll(moved);
+        expected.addAll(6, moved);
+
+        journal.recordMove(new int[] { 1, 4, 5 }, 6);
+        journal.flush();
+
+        List<Integer> actual = newList(10);
+        replay(sink.batches.get(0), actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void batchRemoveIsRecordedBottomUp() {
+        journal.recordRemove(new int[] { 1, 3, 5 });
+
+        journal.flush();
+        assertOps(sink.batches.get(0),
+                ReorderJournal.REMOVE, 5, 5,
+                ReorderJournal.REMOVE, 3, 3,
+                ReorderJournal.REMOVE, 1, 1);
+    }
+
+    @Test
+    public void failedBatchIsRetriedBeforeNewerOperations() {
+        sink.failures = 1;
+        journal.recordMove(1, 4);
+        journal.flush();
+        assertEquals(1, sink.attempts);
+        assertEquals(1, journal.getPendingCount());
+
+        journal.recordRemove(0);
+        journal.flush();
+        assertEquals(2, sink.attempts);
+        assertEquals(0, journal.getPendingCount());
+        assertOps(sink.batches.get(0),
+                ReorderJournal.MOVE, 1, 4,
+                ReorderJournal.REMOVE, 0, 0);
+    }
+
+    @Test
+    public void recordingWhileTheSinkFailsKeepsBothBatches() {
+        sink.failures = 1;
+        sink.duringApply = new Runnable() {
+            public void run() {
+                journal.recordMove(7, 8);
+            }
+        };
+        journal.recordMove(1, 2);
+        journal.flush();
+        assertEquals(2, journal.getPendingCount());
+
+        sink.duringApply = null;
+        journal.flush();
+        assertOps(sink.batches.get(0),
+                ReorderJournal.MOVE, 1, 2,
+                ReorderJournal.MOVE, 7, 8);
+    }
+
+    @Test
+    public void flushesOnTheExecutorAfterTheDebounceDelay() throws InterruptedException {
+        sink.applied = new CountDownLatch(1);
+        journal = new ReorderJournal(sink, executor, 20);
+
+        journal.recordMove(0, 1);
+        journal.recordMove(1, 2);
+        assertTrue(sink.applied.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), sink.thread);
+        assertOps(sink.batches.get(0), ReorderJournal.MOVE, 0, 2);
+    }
+
+    /*
+      * Whatever the folding does, replaying a flushed batch must give
+      * the same order as applying every recorded operation.
+      */
+    @Test
+    public void foldedBatchesReplayLikeTheRecordedOperations() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            int size = 2 + random.nextInt(12);
+            List<Integer> expected = newList(size);
+            int last = -1;
+            for (int i = 0; i < 20 && expected.size() > 1; i++) {
+                // often pick up the row moved last, that is what gets folded
+                int from = (last >= 0 && last < expected.size() && random.nextBoolean())
+                        ? last : random.nextInt(expected.size());
+                if (random.nextInt(5) == 0) {
+                    expected.remove(from);
+                    journal.recordRemove(from);
+                    last = -1;
+                } else {
+                    int to = random.nextInt(expected.size());
+                    expected.add(to, expected.remove(from));
+                    journal.recordMove(from, to);
+                    last = to;
+                }
+            }
+
+            sink.batches.clear();
+            journal.flush();
+            List<Integer> actual = newList(size);
+            for (int[] batch : sink.batches) {
+                replay(batch, actual);
+            }
+            assertEquals("round " + round, expected, actual);
+        }
+    }
+
+    static List<Integer> newList(int size) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    static void replay(int[] ops, List<Integer> list) {
+        for (int i = 0; i < ops.length; i += 3) {
+            if (ops[i] == ReorderJournal.MOVE) {
+                list.add(ops[i + 2], list.remove(ops[i + 1]));
+            } else {
+                list.remove(ops[i + 1]);
+            }
+        }
+    }
+
+    private static void assertOps(int[] actual, int... expected) {
+        assertArrayEquals(expected, actual);
+    }
+
+    static class RecordingSink implements ReorderJournal.Sink {
+        final List<int[]> batches = new ArrayList<int[]>();
+        int failures;
+        int attempts;
+        Runnable duringApply;
+        CountDownLatch applied;
+        Thread thread;
+
+        public void apply(int[] ops, int count) throws Exception {
+            attempts++;
+            thread = Thread.currentThread();
+            if (duringApply != null) {
+                duringApply.run();
+            }
+            if (failures > 0) {
+                failures--;
+                throw new Exception("sink failure");
+            }
+            batches.add(Arrays.copyOf(ops, count * 3));
+            if (applied != null) {
+                applied.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RowHeightIndexTest {
+    @Test
+    public void resetFillsInTheEstimate() {
+        RowHeightIndex index = new RowHeightIndex();
+        index.reset(100, 48);
+        assertEquals(100, index.size());
+        assertEquals(0, index.offsetOf(0));
+        assertEquals(48 * 37, index.offsetOf(37));
+        assertEquals(48 * 100, index.offsetOf(100));
+        assertEquals(37, index.indexAt(48 * 37));
+        assertEquals(37, index.indexAt(48 * 38 - 1));
+    }
+
+    @Test
+    public void indexAtIsClampedToTheRows() {
+        RowHeightIndex index = new RowHeightIndex();
+        assertEquals(-1, index.indexAt(0));
+
+        index.reset(10, 20);
+        assertEquals(0, index.indexAt(-500));
+        assertEquals(9, index.indexAt(199));
+        assertEquals(9, index.indexAt(100000));
+    }
+
+    /*
+      * Random heights and updates, compared with prefix sums; the
+      * index is reset to other sizes in between, reusing its arrays.
+      */
+    @Test
+    public void matchesPrefixSums() {
+        Random random = new Random(9);
+        RowHeightIndex index = new RowHeightIndex();
+        for (int round = 0; round < 50; round++) {
+            int size = 1 + random.nextInt(300);
+            int estimate = 1 + random.nextInt(80);
+            int[] heights = new int[size];
+            index.reset(size, estimate);
+            for (int i = 0; i < size; i++) {
+                heights[i] = estimate;
+            }
+            for (int i = 0; i < size * 2; i++) {
+                int row = random.nextInt(size);
+                heights[row] = 1 + random.nextInt(150);
+                index.set(row, heights[row]);
+            }
+
+            long offset = 0;
+            for (int i = 0; i < size; i++) {
+                String message = "round " + round + " row " + i;
+                assertEquals(message, heights[i], index.get(i));
+                assertEquals(message, offset, index.offsetOf(i));
+                assertEquals(message, i, index.indexAt(offset));
+                assertEquals(message, i, index.indexAt(offset + heights[i] - 1));
+                offset += heights[i];
+            }
+            assertEquals(offset, index.offsetOf(size));
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*
+  * SQLiteReorderSink against an in-memory database, on its own and
+  * fed by a ReorderJournal.
+  */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, manifest = Config.NONE)
+public class SQLiteReorderSinkTest {
+    private static final int ROWS = 10;
+
+    private SQLiteDatabase db;
+    private SQLiteReorderSink sink;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL("CREATE TABLE items (_id INTEGER PRIMARY KEY, position INTEGER)");
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < ROWS; i++) {
+            values.put("_id", i);
+            values.put("position", i);
+            db.insert("items", null, values);
+        }
+        sink = new SQLiteReorderSink(db, "items", "position");
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void moveDown() {
+        sink.apply(new int[] { ReorderJournal.MOVE, 1, 4 }, 1);
+        assertEquals(ids(0, 2, 3, 4, 1, 5, 6, 7, 8, 9), order());
+    }
+
+    @Test
+    public void moveUp() {
+        sink.apply(new int[] { ReorderJournal.MOVE, 7, 2 }, 1);
+        assertEquals(ids(0, 1, 7, 2, 3, 4, 5, 6, 8, 9), order());
+    }
+
+    @Test
+    public void removeClosesTheGap() {
+        sink.apply(new int[] { ReorderJournal.REMOVE, 3, 3 }, 1);
+        assertEquals(ids(0, 1, 2, 4, 5, 6, 7, 8, 9), order());
+    }
+
+    @Test
+    public void onlyCountOperationsAreApplied() {
+        sink.apply(new int[] { ReorderJournal.MOVE, 0, 9, ReorderJournal.REMOVE, 0, 0 }, 1);
+        assertEquals(ids(1, 2, 3, 4, 5, 6, 7, 8, 9, 0), order());
+    }
+
+    @Test
+    public void batchLeavesNoTransactionOpen() {
+        sink.apply(new int[] { ReorderJournal.MOVE, 0, 5, ReorderJournal.REMOVE, 2, 2 }, 2);
+        assertFalse(db.inTransaction());
+        assertEquals(ids(1, 2, 4, 5, 0, 6, 7, 8, 9), order());
+    }
+
+    /*
+      * The table must end up in the order the list had in memory,
+      * whatever the journal folded on the way.
+      */
+    @Test
+    public void journalBatchesKeepTheTableInListOrder() {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ReorderJournal journal = new ReorderJournal(sink, executor, TimeUnit.HOURS.toMillis(1));
+            List<Long> expected = order();
+            Random random = new Random(7);
+            for (int batch = 0; batch < 20 && expected.size() > 1; batch++) {
+                for (int i = 0; i < 8 && expected.size() > 1; i++) {
+                    int from = random.nextInt(expected.size());
+                    if (random.nextInt(6) == 0) {
+                        expected.remove(from);
+                        journal.recordRemove(from);
+                    } else {
+                        int to = random.nextInt(expected.size());
+                        expected.add(to, expected.remove(from));
+                        journal.recordMove(from, to);
+                    }
+                }
+                journal.flush();
+                assertEquals("batch " + batch, expected, order());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /*
+      * Row ids in position order, checking that the positions are
+      * 0-based and without gaps.
+      */
+    private List<Long> order() {
+        List<Long> ids = new ArrayList<Long>();
+        Cursor cursor = db.rawQuery("SELECT _id, position FROM items ORDER BY position", null);
+        try {
+            while (cursor.moveToNext()) {
+                assertEquals(ids.size(), cursor.getInt(1));
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(long... values) {
+        List<Long> ids = new ArrayList<Long>();
+        for (long value : values) {
+            ids.add(value);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2010 CommonsWare, LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.commonsware.cwac.tlv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.widget.AbsListView;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/*
+  * Replays gestures through TouchListView a second time, after a
+  * warm-up, under Flight Recorder, and expects the library itself to
+  * allocate nothing: young-gen collections during a drag show up as
+  * dropped frames. Each allocation is charged to the nearest frame
+  * outside the JDK. Those made by Robolectric standing in for the
+  * platform, by the platform, or by the test's adapter binding rows
+  * are left alone. Needs TLABs off, so that every allocation is
+  * reported; the pom runs this test in a JVM of its own for that.
+  */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 21, manifest = "../AndroidManifest.xml")
+public class TouchPathAllocationTest {
+    private static final int ROWS = 1000;
+
+    @Before
+    public void needsEveryAllocationReported() {
+        HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        assumeTrue("run with -XX:-UseTLAB", "false".equals(hotspot.getVMOption("UseTLAB").getValue()));
+    }
+
+    @Test
+    public void dragDoesNotAllocate() throws IOException {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+        Gesture drag = Gesture.down(200, y(1)).moveTo(200, y(7), 500).up();
+
+        harness.replay(drag);
+
+        assertEquals(Collections.emptyList(), libraryAllocations(harness, drag));
+    }
+
+    @Test
+    public void translatedDragDoesNotAllocate() throws IOException {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.displacement, "translate").build());
+        Gesture drag = Gesture.down(200, y(1)).moveTo(200, y(7), 500).up();
+
+        harness.replay(drag);
+
+        assertEquals(Collections.emptyList(), libraryAllocations(harness, drag));
+    }
+
+    @Test
+    public void blockDragDoesNotAllocate() throws IOException {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.multi_drag, "true").build());
+        harness.list.setChoiceMode(AbsListView.CHOICE_MODE_MULTIPLE);
+        Gesture drag = Gesture.down(200, y(1)).moveTo(200, y(7), 500).up();
+
+        checkBlock(harness);
+        harness.replay(drag);
+        checkBlock(harness);
+
+        assertEquals(Collections.emptyList(), libraryAllocations(harness, drag));
+    }
+
+    @Test
+    public void autoScrollDoesNotAllocate() throws IOException {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes().build());
+        Gesture drag = Gesture.down(200, y(1)).moveTo(200, 730, 300).hold(1000).up();
+
+        harness.replay(drag);
+
+        assertEquals(Collections.emptyList(), libraryAllocations(harness, drag));
+    }
+
+    @Test
+    public void slideRemoveDoesNotAllocate() throws IOException {
+        ListHarness harness = new ListHarness(ROWS, ListHarness.attributes()
+                .addAttribute(R.attr.remove_mode, "slideRight").build());
+        Gesture slide = Gesture.down(100, y(1)).moveTo(460, y(1), 300).up();
+
+        harness.replay(slide);
+
+        assertEquals(Collections.emptyList(), libraryAllocations(harness, slide));
+    }
+
+    private static int y(int row) {
+        return row * ListHarness.ROW_HEIGHT + ListHarness.ROW_HEIGHT / 2;
+    }
+
+    /*
+      * Rows 1, 3 and 4 checked, so that grabbing row 1 drags all three.
+      */
+    private static void checkBlock(ListHarness harness) {
+        harness.list.clearChoices();
+        harness.list.setItemChecked(1, true);
+        harness.list.setItemChecked(3, true);
+        harness.list.setItemChecked(4, true);
+    }
+
+    /*
+      * Replay the gesture under Flight Recorder and list the
+      * allocations the library made during it, with where.
+      */
+    private static List<String> libraryAllocations(ListHarness harness, Gesture gesture) throws IOException {
+        Recording recording = new Recording();
+        recording.enable("jdk.ObjectAllocationOutsideTLAB").withStackTrace();
+        recording.start();
+        harness.replay(gesture);
+        recording.stop();
+
+        Path file = Files.createTempFile("allocations", ".jfr");
+        try {
+            recording.dump(file);
+            List<String> allocations = new ArrayList<String>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                String site = librarySite(event.getStackTrace());
+                if (site != null) {
+                    allocations.add(event.getClass("objectClass").getName() + " at " + site);
+                }
+            }
+            return allocations;
+        } finally {
+            recording.close();
+            Files.delete(file);
+        }
+    }
+
+    /*
+      * The library frame an allocation made during a replay is charged
+      * to, or null if it goes to someone else or was not made during a
+      * replay. JDK frames are passed over, except the JVM's own method
+      * handle and reflection plumbing, which Robolectric's
+      * instrumentation calls through.
+      */
+    private static String librarySite(RecordedStackTrace stack) {
+        if (stack == null) {
+            return null;
+        }
+
+        String site = null;
+        boolean charged = false;
+        for (RecordedFrame frame : stack.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (type.equals(ListHarness.class.getName()) && frame.getMethod().getName().equals("replay")) {
+                return site;
+            }
+            if (charged || isJdk(type)) {
+                continue;
+            }
+            charged = true;
+            if (type.startsWith("com.commonsware.cwac.tlv.") && !isTest(type)) {
+                site = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isJdk(String type) {
+        if (type.startsWith("java.lang.invoke.") || type.startsWith("sun.reflect.")) {
+            return false;
+        }
+        return type.startsWith("java.") || type.startsWith("javax.") || type.startsWith("sun.")
+                || type.startsWith("jdk.");
+    }
+
+    private static boolean isTest(String type) {
+        return type.startsWith(ListHarness.class.getName()) || type.startsWith(Gesture.class.getName())
+                || type.startsWith(TouchPathAllocationTest.class.getName());
+    }
+}